@@ -0,0 +1,133 @@
+package com.demod.discord.boredgames;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs button actions on a shared executor. Actions for the same key (the
+ * message they were clicked on) run one at a time in the order they arrived,
+ * while different keys run in parallel.
+ */
+public class ActionDispatcher {
+
+	public enum Dispatch {
+		ACCEPTED, COALESCED, REJECTED
+	}
+
+	private class Mailbox implements Runnable {
+		private final String key;
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		private final Set<String> queued = ConcurrentHashMap.newKeySet();
+		private volatile boolean scheduled = false;
+
+		public Mailbox(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public void run() {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				try {
+					task.run();
+				} catch (Throwable e) {
+					e.printStackTrace();
+				}
+			}
+
+			mailboxes.compute(key, (k, m) -> {
+				if (tasks.isEmpty()) {
+					scheduled = false;
+					return null;
+				}
+				executor.execute(this);
+				return m;
+			});
+		}
+	}
+
+	private final ActionExecutor executor;
+	private final int mailboxLimit;
+
+	// Key = Message ID
+	private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+	private final LongAdder acceptedCount = new LongAdder();
+	private final LongAdder coalescedCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+
+	public ActionDispatcher(ActionExecutor executor, int mailboxLimit) {
+		this.executor = executor;
+		this.mailboxLimit = mailboxLimit;
+	}
+
+	/**
+	 * Queues the task behind any others for the same key. A task whose
+	 * coalesceKey is already waiting in that mailbox is dropped, and tasks are
+	 * rejected once the mailbox or the executor queue is full.
+	 */
+	public Dispatch dispatch(String key, String coalesceKey, Runnable task) {
+		Dispatch[] ret = new Dispatch[1];
+		mailboxes.compute(key, (k, m) -> {
+			if (m == null) {
+				m = new Mailbox(k);
+			}
+			if (m.queued.contains(coalesceKey)) {
+				ret[0] = Dispatch.COALESCED;
+			} else if (m.tasks.size() >= mailboxLimit || (!m.scheduled && !executor.hasCapacity())) {
+				ret[0] = Dispatch.REJECTED;
+			} else {
+				ret[0] = Dispatch.ACCEPTED;
+				m.queued.add(coalesceKey);
+				Set<String> queued = m.queued;
+				m.tasks.add(() -> {
+					queued.remove(coalesceKey);
+					task.run();
+				});
+				if (!m.scheduled) {
+					m.scheduled = true;
+					executor.execute(m);
+				}
+			}
+			return (m.scheduled) ? m : null;
+		});
+
+		switch (ret[0]) {
+		case ACCEPTED:
+			acceptedCount.increment();
+			break;
+		case COALESCED:
+			coalescedCount.increment();
+			break;
+		case REJECTED:
+			rejectedCount.increment();
+			break;
+		}
+		return ret[0];
+	}
+
+	public long getAcceptedCount() {
+		return acceptedCount.sum();
+	}
+
+	public long getCoalescedCount() {
+		return coalescedCount.sum();
+	}
+
+	public int getMailboxCount() {
+		return mailboxes.size();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	public String getStats() {
+		return String.format("Clicks: %d accepted, %d coalesced, %d rejected, %d mailboxes", getAcceptedCount(),
+				getCoalescedCount(), getRejectedCount(), getMailboxCount());
+	}
+}
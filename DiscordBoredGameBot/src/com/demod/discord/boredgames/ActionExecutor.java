@@ -0,0 +1,137 @@
+package com.demod.discord.boredgames;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Fixed size pool for button actions and game continuations. Work submitted
+ * internally is always accepted, but new clicks are only admitted through
+ * {@link #hasCapacity()} so a click storm cannot grow the queue without bound.
+ */
+public class ActionExecutor extends ThreadPoolExecutor {
+
+	private static class TimedTask implements Runnable {
+		private final Runnable task;
+		private final long queuedNanos = System.nanoTime();
+		private long startNanos;
+
+		public TimedTask(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			task.run();
+		}
+	}
+
+	private static final long IDLE_POLL_MILLIS = 50;
+
+	private final int queueLimit;
+
+	private final LongAdder completedTasks = new LongAdder();
+	private final AtomicLong waitNanosTotal = new AtomicLong();
+	private final LongAccumulator waitNanosMax = new LongAccumulator(Math::max, 0);
+	private final AtomicLong executeNanosTotal = new AtomicLong();
+	private final LongAccumulator executeNanosMax = new LongAccumulator(Math::max, 0);
+
+	public ActionExecutor(int threads, int queueLimit) {
+		super(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				new ThreadFactoryBuilder().setNameFormat("action-%d").setDaemon(true).build());
+		this.queueLimit = queueLimit;
+		allowCoreThreadTimeOut(true);
+	}
+
+	@Override
+	protected void afterExecute(Runnable r, Throwable t) {
+		if (r instanceof TimedTask) {
+			long nanos = System.nanoTime() - ((TimedTask) r).startNanos;
+			completedTasks.increment();
+			executeNanosTotal.addAndGet(nanos);
+			executeNanosMax.accumulate(nanos);
+		}
+	}
+
+	/**
+	 * Waits until nothing is queued or running. Idle has to be seen twice in a
+	 * row, so work handed on by a task that was just finishing is waited for
+	 * too.
+	 *
+	 * @return false if there was still work when the time ran out
+	 */
+	public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+		long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		int idleChecks = 0;
+		while (idleChecks < 2) {
+			if (System.nanoTime() - deadlineNanos > 0) {
+				return false;
+			}
+			Thread.sleep(IDLE_POLL_MILLIS);
+			idleChecks = (getActiveCount() == 0 && getQueue().isEmpty()) ? idleChecks + 1 : 0;
+		}
+		return true;
+	}
+
+	@Override
+	protected void beforeExecute(Thread t, Runnable r) {
+		if (r instanceof TimedTask) {
+			TimedTask task = (TimedTask) r;
+			task.startNanos = System.nanoTime();
+			long nanos = task.startNanos - task.queuedNanos;
+			waitNanosTotal.addAndGet(nanos);
+			waitNanosMax.accumulate(nanos);
+		}
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		super.execute(new TimedTask(command));
+	}
+
+	public double getAverageExecuteMillis() {
+		long count = completedTasks.sum();
+		return count == 0 ? 0 : executeNanosTotal.get() / (count * 1_000_000.0);
+	}
+
+	public double getAverageWaitMillis() {
+		long count = completedTasks.sum();
+		return count == 0 ? 0 : waitNanosTotal.get() / (count * 1_000_000.0);
+	}
+
+	public long getCompletedTasks() {
+		return completedTasks.sum();
+	}
+
+	public double getMaxExecuteMillis() {
+		return executeNanosMax.get() / 1_000_000.0;
+	}
+
+	public double getMaxWaitMillis() {
+		return waitNanosMax.get() / 1_000_000.0;
+	}
+
+	public int getQueueDepth() {
+		return getQueue().size();
+	}
+
+	public int getQueueLimit() {
+		return queueLimit;
+	}
+
+	public String getStats() {
+		return String.format(
+				"Actions: %d active, %d/%d queued, %d done, wait avg %.1fms max %.1fms, execute avg %.1fms max %.1fms",
+				getActiveCount(), getQueueDepth(), queueLimit, getCompletedTasks(), getAverageWaitMillis(),
+				getMaxWaitMillis(), getAverageExecuteMillis(), getMaxExecuteMillis());
+	}
+
+	public boolean hasCapacity() {
+		return getQueueDepth() < queueLimit;
+	}
+}
@@ -0,0 +1,71 @@
+package com.demod.discord.boredgames;
+
+import java.util.Optional;
+
+/**
+ * The custom ID of a display's button, which says which game, which of its
+ * displays and which of its actions the button belongs to. A click is routed
+ * straight from its ID, and one on a display that has since moved on (or from
+ * before a restart) finds no route and is turned away without touching the
+ * game.
+ */
+public final class ActionId {
+
+	private static final char SEPARATOR = '.';
+
+	// Tells this process's buttons apart from those of earlier runs, whose game
+	// IDs and display sequences started from zero too
+	private static final String EPOCH = Long.toString(System.currentTimeMillis() / 1000, Character.MAX_RADIX);
+
+	/**
+	 * @return the prefix shared by the IDs of every button on the display
+	 */
+	public static String displayKey(int gameId, long sequence) {
+		return EPOCH + SEPARATOR + Integer.toString(gameId, Character.MAX_RADIX) + SEPARATOR
+				+ Long.toString(sequence, Character.MAX_RADIX);
+	}
+
+	public static String format(String displayKey, int index) {
+		return displayKey + SEPARATOR + Integer.toString(index, Character.MAX_RADIX);
+	}
+
+	/**
+	 * @return empty if the ID wasn't made by this process
+	 */
+	public static Optional<ActionId> parse(String componentId) {
+		String[] parts = componentId.split("\\" + SEPARATOR);
+		if (parts.length != 4 || !parts[0].equals(EPOCH)) {
+			return Optional.empty();
+		}
+		try {
+			int gameId = Integer.parseInt(parts[1], Character.MAX_RADIX);
+			int index = Integer.parseInt(parts[3], Character.MAX_RADIX);
+			return Optional.of(
+					new ActionId(componentId.substring(0, componentId.lastIndexOf(SEPARATOR)), gameId, index));
+		} catch (NumberFormatException e) {
+			return Optional.empty();
+		}
+	}
+
+	private final String displayKey;
+	private final int gameId;
+	private final int index;
+
+	private ActionId(String displayKey, int gameId, int index) {
+		this.displayKey = displayKey;
+		this.gameId = gameId;
+		this.index = index;
+	}
+
+	public String getDisplayKey() {
+		return displayKey;
+	}
+
+	public int getGameId() {
+		return gameId;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+}
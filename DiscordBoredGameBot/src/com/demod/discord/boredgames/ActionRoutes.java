@@ -0,0 +1,111 @@
+package com.demod.discord.boredgames;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+
+import com.demod.discord.boredgames.LatencyStats.Trace;
+
+import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
+
+/**
+ * Maps a display to the handler for its buttons, keyed by the
+ * {@link ActionId#getDisplayKey() display key} every button's ID starts with.
+ * A route only lives as long as the display it belongs to: it is dropped when
+ * the display gets its result, when its game ends, or when it expires.
+ */
+public class ActionRoutes {
+
+	@FunctionalInterface
+	public interface ActionHandler {
+		void accept(ButtonInteractionEvent event, int index, Trace trace);
+	}
+
+	private static class Route {
+		private final int gameId;
+		private final CompletableFuture<?> awaitor;
+		private final ActionHandler handler;
+		private final int actionCount;
+		private final long expireMillis;
+
+		public Route(int gameId, CompletableFuture<?> awaitor, ActionHandler handler, int actionCount,
+				long expireMillis) {
+			this.gameId = gameId;
+			this.awaitor = awaitor;
+			this.handler = handler;
+			this.actionCount = actionCount;
+			this.expireMillis = expireMillis;
+		}
+	}
+
+	private final long ttlMillis;
+	private final LongSupplier clock;
+
+	// Key = Display Key
+	private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+	public ActionRoutes(long ttlMillis) {
+		this(ttlMillis, System::currentTimeMillis);
+	}
+
+	/**
+	 * @param clock the current time in milliseconds
+	 */
+	ActionRoutes(long ttlMillis, LongSupplier clock) {
+		this.ttlMillis = ttlMillis;
+		this.clock = clock;
+	}
+
+	/**
+	 * @return the action behind a button's custom ID, if its display is still
+	 *         routed here. Empty for a display that has moved on, or for a
+	 *         button from before a restart.
+	 */
+	public Optional<ActionId> find(String componentId) {
+		return ActionId.parse(componentId).filter(a -> get(a.getDisplayKey()).isPresent());
+	}
+
+	public Optional<ActionHandler> get(String displayKey) {
+		Route route = routes.get(displayKey);
+		if (route == null || route.expireMillis < clock.getAsLong()) {
+			return Optional.empty();
+		}
+		return Optional.of(route.handler);
+	}
+
+	public int getRetainedActionCount() {
+		return routes.values().stream().mapToInt(r -> r.actionCount).sum();
+	}
+
+	public int getRouteCount() {
+		return routes.size();
+	}
+
+	public void put(String displayKey, int gameId, CompletableFuture<?> awaitor, int actionCount,
+			ActionHandler handler) {
+		Route route = new Route(gameId, awaitor, handler, actionCount, clock.getAsLong() + ttlMillis);
+		routes.put(displayKey, route);
+		awaitor.whenComplete((r, ex) -> routes.remove(displayKey, route));
+	}
+
+	public int removeExpired() {
+		long nowMillis = clock.getAsLong();
+		int[] count = { 0 };
+		routes.values().removeIf(route -> {
+			if (route.expireMillis < nowMillis) {
+				route.awaitor.completeExceptionally(new TimeoutException("No action taken in time."));
+				count[0]++;
+				return true;
+			}
+			return false;
+		});
+		return count[0];
+	}
+
+	public void removeGame(int gameId) {
+		routes.values().removeIf(r -> r.gameId == gameId);
+	}
+}
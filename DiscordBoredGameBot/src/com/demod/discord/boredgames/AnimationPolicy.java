@@ -0,0 +1,112 @@
+package com.demod.discord.boredgames;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides how many frames of an animation are worth showing. Animations get
+ * shorter, down to none at all, while the channel's REST queue is backed up or
+ * its edits are slow, and never hold up the next prompt by more than the
+ * budget.
+ */
+public class AnimationPolicy {
+
+	/**
+	 * One run of an animation. Before each frame the game asks
+	 * {@link #nextFrame()}, which stops the animation early if the budget has
+	 * run out or the channel has backed up since it started.
+	 */
+	public class Animation {
+		private final String channelId;
+		private final int frames;
+		private final int step;
+		private final long frameMillis;
+		private final long deadlineMillis;
+		private int sent = 0;
+		private boolean finished = false;
+
+		private Animation(String channelId, int frames, int step, long frameMillis, long deadlineMillis) {
+			this.channelId = channelId;
+			this.frames = frames;
+			this.step = step;
+			this.frameMillis = frameMillis;
+			this.deadlineMillis = deadlineMillis;
+		}
+
+		/**
+		 * Counts the frames that were never shown as skipped. Does nothing if
+		 * the animation already finished.
+		 */
+		public void finish() {
+			if (!finished) {
+				finished = true;
+				skippedCount.add(Math.max(0, frames - sent));
+			}
+		}
+
+		/**
+		 * @return how many frames to move on by between shown frames, so the
+		 *         shown ones are spread over the whole animation
+		 */
+		public int getStep() {
+			return step;
+		}
+
+		/**
+		 * @return whether to show the next frame, which is then counted as sent
+		 */
+		public boolean nextFrame() {
+			if (finished) {
+				return false;
+			}
+			if (System.currentTimeMillis() + frameMillis > deadlineMillis
+					|| rest.getQueueDepth(channelId) >= BUSY_QUEUE_DEPTH) {
+				finish();
+				return false;
+			}
+			sent++;
+			sentCount.increment();
+			return true;
+		}
+	}
+
+	private static final long BUDGET_MILLIS = Long.getLong("boredgames.animationBudgetMillis", 6000);
+	private static final int BUSY_QUEUE_DEPTH = Integer.getInteger("boredgames.animationBusyQueueDepth", 2);
+	private static final long SLOW_REST_MILLIS = Long.getLong("boredgames.animationSlowRestMillis", 1500);
+
+	private final RestScheduler rest;
+
+	private final LongAdder sentCount = new LongAdder();
+	private final LongAdder skippedCount = new LongAdder();
+
+	public AnimationPolicy(RestScheduler rest) {
+		this.rest = rest;
+	}
+
+	public long getSentCount() {
+		return sentCount.sum();
+	}
+
+	public long getSkippedCount() {
+		return skippedCount.sum();
+	}
+
+	public String getStats() {
+		return String.format("Animations: %d frames sent, %d skipped", getSentCount(), getSkippedCount());
+	}
+
+	/**
+	 * @param lastRestMillis how long the game's last display took to show, or
+	 *                       -1 if it hasn't shown one yet
+	 * @param frameMillis    how long each frame stays up
+	 */
+	public Animation start(String channelId, long lastRestMillis, int frames, long frameMillis) {
+		long nowMillis = System.currentTimeMillis();
+		if (rest.getQueueDepth(channelId) >= BUSY_QUEUE_DEPTH || lastRestMillis >= SLOW_REST_MILLIS) {
+			// No time at all, so not even the first frame is shown
+			return new Animation(channelId, frames, Math.max(1, frames), frameMillis, nowMillis);
+		}
+		int shown = (int) Math.min(frames, BUDGET_MILLIS / (frameMillis + Math.max(0, lastRestMillis)));
+		int step = (shown == 0) ? Math.max(1, frames) : (frames + shown - 1) / shown;
+		return new Animation(channelId, frames, step, frameMillis, nowMillis + BUDGET_MILLIS);
+	}
+}
@@ -1,42 +1,56 @@
 package com.demod.discord.boredgames;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.AbstractMap.SimpleImmutableEntry;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
+import org.json.JSONObject;
+
 import com.demod.dcba.CommandReporting;
 import com.demod.dcba.DCBA;
 import com.demod.dcba.DiscordBot;
 import com.demod.dcba.SlashCommandEvent;
+import com.demod.discord.boredgames.ActionDispatcher.Dispatch;
 import com.demod.discord.boredgames.Display.ActionButton;
 import com.demod.discord.boredgames.Display.ResultAction;
+import com.demod.discord.boredgames.LatencyStats.Stage;
+import com.demod.discord.boredgames.LatencyStats.Trace;
+import com.demod.discord.boredgames.Leaderboard.Row;
+import com.demod.discord.boredgames.MessageCache.RenderedMessage;
+import com.demod.discord.boredgames.RestScheduler.Priority;
+import com.demod.discord.boredgames.UserProfileCache.Profile;
 import com.demod.discord.boredgames.game.Connect4Game;
 import com.demod.discord.boredgames.game.DominionGame;
 import com.demod.discord.boredgames.game.YahtzeeGame;
-import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.AbstractScheduledService;
 
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.entities.channel.ChannelType;
+import net.dv8tion.jda.api.entities.channel.concrete.PrivateChannel;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
 import net.dv8tion.jda.api.interactions.components.ActionRow;
 import net.dv8tion.jda.api.interactions.components.LayoutComponent;
 import net.dv8tion.jda.api.requests.restaction.MessageCreateAction;
@@ -44,23 +58,101 @@ import net.dv8tion.jda.api.requests.restaction.MessageEditAction;
 
 public class DiscordBoredGameBot extends AbstractScheduledService {
 	private static final int NOTIFY_MINUTES = 5;
-
-	private static ExecutorService executor = Executors.newCachedThreadPool();
+	private static final int LIST_GAMES_MAX = 20;
+	private static final int LIST_LATENCY_MAX = 24;
+	// The latency summary is logged this often, or never if it is 0
+	private static final int LATENCY_LOG_MINUTES = Integer.getInteger("boredgames.latencyLogMinutes", 10);
+
+	// Games park on a virtual thread between turns unless this is set at startup
+	private static final boolean PLATFORM_GAME_THREADS = Boolean.getBoolean("boredgames.platformThreads");
+
+	private static final int ACTION_THREADS = Integer.getInteger("boredgames.actionThreads",
+			Runtime.getRuntime().availableProcessors() * 4);
+	private static final int ACTION_QUEUE_LIMIT = Integer.getInteger("boredgames.actionQueueLimit", 1000);
+	private static final int ACTION_MAILBOX_LIMIT = Integer.getInteger("boredgames.actionMailboxLimit", 16);
+	private static final int MAX_GAMES_PER_GUILD = Integer.getInteger("boredgames.maxGamesPerGuild", 25);
+	private static final int MAX_GAMES_PER_CHANNEL = Integer.getInteger("boredgames.maxGamesPerChannel", 3);
+	private static final int MAX_GAMES_PER_PLAYER = Integer.getInteger("boredgames.maxGamesPerPlayer", 3);
+
+	private static final String SNAPSHOT_FILE = System.getProperty("boredgames.snapshotFile", "snapshots.json");
+	private static final String SAVE_DIRECTORY = System.getProperty("boredgames.saveDirectory", "saves");
+
+	private static final long SHUTDOWN_DRAIN_MILLIS = Long.getLong("boredgames.shutdownDrainMillis", 10000);
+
+	private static final long ACTION_TTL_MINUTES = Long.getLong("boredgames.actionTtlMinutes",
+			TimeUnit.DAYS.toMinutes(1));
+
+	private static ActionExecutor executor = new ActionExecutor(ACTION_THREADS, ACTION_QUEUE_LIMIT);
+	private static ActionDispatcher dispatcher = new ActionDispatcher(executor, ACTION_MAILBOX_LIMIT);
+
+	private static String formatDuration(long millis) {
+		long seconds = TimeUnit.MILLISECONDS.toSeconds(millis);
+		if (seconds < 60) {
+			return seconds + "s";
+		} else if (seconds < 3600) {
+			return (seconds / 60) + "m " + (seconds % 60) + "s";
+		} else {
+			return (seconds / 3600) + "h " + ((seconds / 60) % 60) + "m";
+		}
+	}
 
 	public static void main(String[] args) {
 		new DiscordBoredGameBot().startAsync().awaitTerminated();
 	}
 
+	/**
+	 * Hashes everything a display puts on Discord except the button ids, which
+	 * change with every display even when the buttons look the same.
+	 */
+	private static <T> long renderHash(MessageEmbed untimedEmbed, List<List<ActionButton<T>>> actionRows) {
+		StringBuilder render = new StringBuilder(untimedEmbed.toData().toString());
+		for (List<ActionButton<T>> row : actionRows) {
+			if (row.isEmpty()) {
+				continue;
+			}
+			render.append('\n');
+			for (ActionButton<T> b : row) {
+				render.append(b.button.getStyle()).append('|').append(b.button.getLabel()).append('|')
+						.append(b.button.getEmoji() == null ? "" : b.button.getEmoji().getFormatted()).append('|')
+						.append(b.button.isDisabled()).append(';');
+			}
+		}
+
+		// FNV-1a, 64 bits
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < render.length(); i++) {
+			hash ^= render.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
 	private final DiscordBot bot;
+	private final ThreadFactory gameThreadFactory;
 
-	// Key = Game ID
-	private final LinkedHashMap<Integer, Game> games = new LinkedHashMap<>();
+	private final GameRegistry registry = new GameRegistry(MAX_GAMES_PER_GUILD, MAX_GAMES_PER_CHANNEL,
+			MAX_GAMES_PER_PLAYER);
 	private final AtomicInteger nextGameId = new AtomicInteger(0);
 
-	// Key = Message ID
-	private final Map<String, Consumer<ButtonInteractionEvent>> awaitingActions = new ConcurrentHashMap<>();
-	private final ConcurrentHashMap<User, Entry<TextChannel, Long>> notifyMemberMillis = new ConcurrentHashMap<>();
+	private final ActionRoutes routes = new ActionRoutes(TimeUnit.MINUTES.toMillis(ACTION_TTL_MINUTES));
+	private final RestScheduler rest = new RestScheduler();
+	private final PrivateChannelCache privateChannels = new PrivateChannelCache();
+	private final UserProfileCache profiles = new UserProfileCache();
+	private final AnimationPolicy animations = new AnimationPolicy(rest);
+	private final TurnNotifier notifier = new TurnNotifier(rest, privateChannels);
 	private final ConcurrentHashMap<User, Long> memberLastActionMillis = new ConcurrentHashMap<>();
+	private final SnapshotStore snapshots = new SnapshotStore(Paths.get(SNAPSHOT_FILE));
+	private final SaveCache saves = new SaveCache(new SaveStore(Paths.get(SAVE_DIRECTORY)));
+	private final LatencyStats latency = new LatencyStats();
+	private final MessageCache messageCache = new MessageCache();
+	private final EditCoalescer frames = new EditCoalescer(rest);
+	private final LongAdder displayCount = new LongAdder();
+	private final LongAdder restCallCount = new LongAdder();
+	private final LongAdder skippedEditCount = new LongAdder();
+	private final LongAdder staleClickCount = new LongAdder();
+	private long iterationCount = 0;
+	// Cleared on shutdown, so no click moves a game on while it is snapshotted
+	private volatile boolean acceptingActions = true;
 
 	public DiscordBoredGameBot() {
 		bot = DCBA.builder()//
@@ -73,172 +165,560 @@ public class DiscordBoredGameBot extends AbstractScheduledService {
 				.addSlashCommand("dominion", "Start a game of Dominion! (2-4 Players)",
 						e -> startGame(e, new DominionGame()))//
 				//
+				.addSlashCommand("games", "List the games running in this server. (Manage Server)", this::listGames)//
+				.addSlashCommand("latency", "Show how long buttons take to respond, by game and phase.",
+						this::listLatency)//
+				.addSlashCommand("yahtzee-leaderboard", "Show the best Yahtzee players across every server.",
+						this::listYahtzeeLeaderboard)//
+				//
 				.addButtonHandler(this::onAction)//
 				//
 				.create();
+
+		if (PLATFORM_GAME_THREADS) {
+			gameThreadFactory = Thread.ofPlatform().name("game-", 0).daemon(true).factory();
+		} else {
+			gameThreadFactory = Thread.ofVirtual().name("game-", 0).factory();
+		}
+	}
+
+	private boolean admitGame(SlashCommandEvent e, Game game) {
+		Optional<String> rejection = registry.register(game);
+		if (rejection.isPresent()) {
+			e.reply(rejection.get() + " Finish one before starting another!");
+			System.out.println("GAME REJECTED: " + game.getClass().getSimpleName() + " #" + game.getId() + " - "
+					+ rejection.get());
+			return false;
+		}
+		return true;
 	}
 
-	private void checkAndNotifyMembers() {
-		long nowMillis = System.currentTimeMillis();
-		Iterables.removeIf(notifyMemberMillis.entrySet(), entry -> {
-			User player = entry.getKey();
-			TextChannel channel = entry.getValue().getKey();
-			long notifyMillis = entry.getValue().getValue();
-			if (nowMillis > notifyMillis) {
+	/**
+	 * Routes clicks on buttons with the display key to their actions until one
+	 * of them decides the result.
+	 */
+	private <T> CompletableFuture<T> awaitActions(Game game, String displayKey, List<ActionButton<T>> actions) {
+		CompletableFuture<T> awaitor = new CompletableFuture<>();
+		if (!actions.isEmpty()) {
+			game.setWaiting(true);
+			awaitor.whenComplete((r, ex) -> game.setWaiting(false));
+			routes.put(displayKey, game.getId(), awaitor, actions.size(), (e, index, t) -> {
+				if (index >= actions.size()) {
+					return;
+				}
+
+				ResultAction<T> action = actions.get(index).action;
+				if (!action.accept(e.getUser())) {
+					return;
+				}
+				registry.addPlayer(game, e.getUser());
+				game.setActionTrace(t);
+
 				try {
-					player.openPrivateChannel().complete()
-							.sendMessage("Hi! It is your turn! ==> " + channel.getAsMention()).complete();
-					System.out.println("Notified " + player.getEffectiveName() + " to take their turn.");
-				} catch (Exception e) {
-					e.printStackTrace();
+					T result = action.call(e.getUser());
+					awaitor.complete(result);
+				} catch (Exception e1) {
+					awaitor.completeExceptionally(e1);
+					System.out.println("ACTION EXCEPTIONED - " + e1.getMessage());
 				}
-				return true;
+			});
+		} else {
+			awaitor.complete(null);
+		}
+
+		return awaitor;
+	}
+
+	/**
+	 * Waits for every game to come to rest on a display that waits for its
+	 * players, the only place a game can be snapshotted. A game thread in the
+	 * middle of a move, a display still being sent or an animation still
+	 * playing all get there once they're done, and clicks must already be
+	 * turned away so the games stay there.
+	 *
+	 * @return false if some games were still busy when the time ran out
+	 */
+	private boolean awaitGamesWaiting(long deadlineMillis) throws InterruptedException {
+		// Twice in a row, since a display waits a moment before its game has its message
+		int restingChecks = 0;
+		while (restingChecks < 2) {
+			if (registry.getGames().stream().allMatch(Game::isWaiting)) {
+				restingChecks++;
+			} else if (System.currentTimeMillis() >= deadlineMillis) {
+				return false;
+			} else {
+				restingChecks = 0;
+			}
+			Thread.sleep(50);
+		}
+		return true;
+	}
+
+	private Thread createGameThread(Game game) {
+		return gameThreadFactory.newThread(() -> {
+			try {
+				game.resume();
+				game.run();
+			} catch (Throwable ex) {
+				ex.printStackTrace();
+				System.err.println("GAME IS KILL :(");
+				throw ex;
+			} finally {
+				endGame(game);
 			}
-			return false;
 		});
 	}
 
-	public void notifyForAction(User player, TextChannel channel) {
-		Optional<Long> lastActionMillis = Optional.ofNullable(memberLastActionMillis.get(player));
-		notifyMemberMillis.put(player, new SimpleImmutableEntry<>(channel,
-				lastActionMillis.orElse(System.currentTimeMillis()) + TimeUnit.MINUTES.toMillis(NOTIFY_MINUTES)));
-		checkAndNotifyMembers();
-	}
-
-	private synchronized void onAction(ButtonInteractionEvent e, CommandReporting reporting) {
-		String id = e.getMessage().getId();
-		if (awaitingActions.containsKey(id)) {
-			Consumer<ButtonInteractionEvent> consumer = awaitingActions.get(id);
-			if (e.getChannelType() == ChannelType.TEXT) {
-				notifyMemberMillis.remove(e.getUser());
-				memberLastActionMillis.put(e.getUser(), System.currentTimeMillis());
+	private void endGame(Game game) {
+		System.out.println("GAME OVER: " + game.getClass().getSimpleName() + " #" + game.getId());
+		registry.unregister(game);
+		routes.removeGame(game.getId());
+		messageCache.removeAll(game.getMessageIds());
+	}
+
+	private String getDisplayStats() {
+		long displays = displayCount.sum();
+		long restCalls = restCallCount.sum() + frames.getSentCount();
+		return String.format(
+				"Displays: %d shown, %d unchanged, %d frames dropped, %.2f REST calls each, %d messages cached, "
+						+ "%d deleted, %d stale clicks",
+				displays, skippedEditCount.sum(), frames.getDroppedCount(),
+				displays == 0 ? 0 : restCalls / (double) displays, messageCache.getSize(),
+				messageCache.getDeletedCount(), staleClickCount.sum());
+	}
+
+	AnimationPolicy getAnimations() {
+		return animations;
+	}
+
+	JDA getJDA() {
+		return bot.getJDA();
+	}
+
+	PrivateChannelCache getPrivateChannels() {
+		return privateChannels;
+	}
+
+	UserProfileCache getProfiles() {
+		return profiles;
+	}
+
+	SaveCache getSaves() {
+		return saves;
+	}
+
+	/**
+	 * Drops the channel from the private channel cache if it is one, so the
+	 * next display opens it again.
+	 */
+	private void invalidatePrivateChannel(MessageChannel channel) {
+		if (channel instanceof PrivateChannel) {
+			User player = ((PrivateChannel) channel).getUser();
+			if (player != null) {
+				privateChannels.invalidate(player);
 			}
-			executor.submit(() -> {
-				consumer.accept(e);
-			});
 		}
-		e.deferEdit().complete();
 	}
 
-	private Optional<Message> reloadMessage(Message message) {
-		try {
-			return Optional.ofNullable(message.getChannel().retrieveMessageById(message.getId()).complete());
-		} catch (Exception e) {
-			return Optional.empty();
+	private void launchGame(Game game) {
+		if (game instanceof StateGame) {
+			executor.submit(() -> ((StateGame) game).start(() -> endGame(game)));
+		} else {
+			game.getThread().start();
 		}
 	}
 
-	@Override
-	protected void runOneIteration() throws Exception {
-		checkAndNotifyMembers();
+	private void listGames(SlashCommandEvent e) {
+		List<Game> games;
+		if (e.getChannelType() == ChannelType.PRIVATE) {
+			games = registry.getPlayerGames(e.getUser().getId());
+		} else {
+			Member member = e.getGuild().getMember(e.getUser());
+			if (member == null || !member.hasPermission(Permission.MANAGE_SERVER)) {
+				e.reply("You need the Manage Server permission to list games.");
+				return;
+			}
+			games = registry.getGuildGames(e.getGuild().getId());
+		}
+
+		EmbedBuilder embed = new EmbedBuilder();
+		embed.setTitle("Active Games (" + games.size() + ")");
+		if (games.isEmpty()) {
+			embed.setDescription("There are no games running here.");
+		} else if (games.size() > LIST_GAMES_MAX) {
+			embed.setDescription("Showing the oldest " + LIST_GAMES_MAX + " games.");
+		}
+
+		for (Game game : games.subList(0, Math.min(games.size(), LIST_GAMES_MAX))) {
+			long waitingMillis = game.getWaitingMillis();
+			long lastRestMillis = game.getLastRestMillis();
+			embed.addField("#" + game.getId() + " " + game.getClass().getSimpleName(), //
+					"Phase: **" + game.getPhaseDescription() + "**\n" //
+							+ "Channel: <#" + game.getChannelId() + ">\n" //
+							+ "Started: <t:" + TimeUnit.MILLISECONDS.toSeconds(game.getStartMillis()) + ":R>\n" //
+							+ "Waiting: **" + (waitingMillis > 0 ? formatDuration(waitingMillis) : "No") + "** ("
+							+ formatDuration(game.getWaitedMillis()) + " total)\n" //
+							+ "Last REST: **" + (lastRestMillis >= 0 ? lastRestMillis + " ms" : "-") + "**",
+					true);
+		}
+
+		embed.setFooter(registry.getGameCount() + " games running on the bot. (" + registry.getAdmittedCount()
+				+ " started, " + registry.getRejectedCount() + " turned away)\n" + executor.getStats() + "\n"
+				+ dispatcher.getStats() + "\n" + notifier.getStats() + "\n" + getDisplayStats() + "\n"
+				+ rest.getStats() + "\n" + privateChannels.getStats() + "\n" + animations.getStats() + "\n"
+				+ saves.getStats() + "\n" + profiles.getStats(), null);
+		e.replyEmbed(embed.build());
 	}
 
-	@Override
-	protected Scheduler scheduler() {
-		return Scheduler.newFixedDelaySchedule(1, 1, TimeUnit.MINUTES);
+	private void listLatency(SlashCommandEvent e) {
+		EmbedBuilder embed = new EmbedBuilder();
+		embed.setTitle("Button Latency");
+		embed.setDescription("Milliseconds from a button press to the updated display, as p50/p99/max.");
+
+		List<String> tags = latency.getTags();
+		for (String tag : tags.subList(0, Math.min(tags.size(), LIST_LATENCY_MAX))) {
+			embed.addField(tag + " (" + latency.get(tag, Stage.ACK).getCount() + ")", Arrays.stream(Stage.values())
+					.map(s -> s + ": **" + latency.getPercentiles(tag, s) + "**").collect(Collectors.joining("\n")),
+					true);
+		}
+
+		embed.setFooter(latency.getSummary(), null);
+		e.replyEmbed(embed.build());
 	}
 
-	@Override
-	protected void shutDown() {
-		bot.stopAsync();
-		games.values().forEach(g -> g.getThread().interrupt());
+	public void notifyForAction(User player, TextChannel channel) {
+		Optional<Long> lastActionMillis = Optional.ofNullable(memberLastActionMillis.get(player));
+		notifier.schedule(player, channel,
+				lastActionMillis.orElse(System.currentTimeMillis()) + TimeUnit.MINUTES.toMillis(NOTIFY_MINUTES));
 	}
 
-	private synchronized void startGame(SlashCommandEvent e, Game game) {
-		int gameId = nextGameId.getAndIncrement();
-		Thread thread = new Thread(() -> {
+	private void listYahtzeeLeaderboard(SlashCommandEvent e) {
+		// Started on the executor, since the first render reads every global save,
+		// but looking up players' names doesn't hold a thread of it
+		CompletableFuture.completedFuture(PlayerId.of(e.getUser()))
+				.thenComposeAsync(this::renderYahtzeeLeaderboard, executor).whenComplete((embed, ex) -> {
+					if (ex != null) {
+						ex.printStackTrace();
+						e.reply("The leaderboard couldn't be loaded, try again later.");
+					} else {
+						e.replyEmbed(embed);
+					}
+				});
+	}
+
+	private void onAction(ButtonInteractionEvent e, CommandReporting reporting) {
+		if (!acceptingActions) {
+			e.deferEdit().queue();
+			return;
+		}
+
+		Optional<ActionId> actionId = routes.find(e.getComponentId());
+		Optional<Game> game = actionId.flatMap(a -> registry.get(a.getGameId()));
+		if (!game.isPresent()) {
+			staleClickCount.increment();
+			e.deferEdit().queue();
+			return;
+		}
+
+		Trace trace = latency.trace(game.get().getClass().getSimpleName(), game.get().getPhase());
+		e.deferEdit().queue(v -> trace.mark(Stage.ACK));
+
+		if (e.getChannelType() == ChannelType.TEXT) {
+			notifier.cancel(e.getUser());
+			memberLastActionMillis.put(e.getUser(), System.currentTimeMillis());
+		}
+		String displayKey = actionId.get().getDisplayKey();
+		int index = actionId.get().getIndex();
+		Dispatch dispatch = dispatcher.dispatch(e.getMessageId(), e.getUser().getId() + ":" + e.getComponentId(),
+				() -> {
+					trace.mark(Stage.QUEUE);
+					routes.get(displayKey).ifPresent(handler -> handler.accept(e, index, trace));
+				});
+		if (dispatch == Dispatch.REJECTED) {
+			System.out.println("ACTION REJECTED - " + executor.getStats());
+		}
+	}
+
+	/**
+	 * @return completes once the names of the players shown are looked up
+	 */
+	private CompletableFuture<MessageEmbed> renderYahtzeeLeaderboard(PlayerId player) {
+		Leaderboard leaderboard = Game.getGlobalLeaderboard(saves, YahtzeeGame.class, YahtzeeGame.JSONKEY_BESTSCORE,
+				YahtzeeGame.MAX_SCORE);
+
+		EmbedBuilder embed = new EmbedBuilder();
+		embed.setTitle("Yahtzee Leaderboard");
+
+		Optional<Row> row = leaderboard.find(player);
+		if (row.isPresent()) {
+			int playCount = Game.getGlobalSave(saves, YahtzeeGame.class, player)
+					.map(s -> s.optInt(YahtzeeGame.JSONKEY_PLAYCOUNT, 0)).orElse(0);
+			embed.setFooter(String.format("You rank #%d of %d, ahead of %.0f%% of players, after %d games.",
+					row.get().getRank(), leaderboard.getSize(), leaderboard.getPercentile(row.get().getScore()),
+					playCount), null);
+		} else {
+			embed.setFooter("Finish a game of Yahtzee to join the leaderboard!", null);
+		}
+
+		if (leaderboard.getSize() == 0) {
+			embed.setDescription("No one has finished a game of Yahtzee yet!");
+			return CompletableFuture.completedFuture(embed.build());
+		}
+		List<Row> rows = YahtzeeGame.getDisplayLeaderboardRows(leaderboard, Optional.of(player));
+		List<CompletableFuture<Profile>> lookups = rows.stream().map(r -> profiles.get(bot.getJDA(), r.getPlayer()))
+				.collect(Collectors.toList());
+		return CompletableFuture.allOf(lookups.toArray(new CompletableFuture[0])).thenApply(v -> {
+			embed.setDescription(YahtzeeGame.generateDisplayLeaderboard(rows,
+					lookups.stream().map(CompletableFuture::join).collect(Collectors.toList())));
+			return embed.build();
+		});
+	}
+
+	private synchronized void resumeGames() {
+		long startNanos = System.nanoTime();
+		List<JSONObject> snapshotList = snapshots.load();
+		int resumed = 0;
+		for (JSONObject snapshot : snapshotList) {
 			try {
-				games.put(gameId, game);
-				game.setInternalInfo(this, e, gameId, Thread.currentThread());
-				game.run();
-			} catch (Throwable ex) {
-				ex.printStackTrace();
-				System.err.println("GAME IS KILL :(");
-				throw ex;
-			} finally {
-				System.out.println("GAME OVER: " + game.getClass().getSimpleName() + " #" + gameId);
-				games.remove(gameId);
+				Game game = Game.create(snapshot);
+				Thread thread = (game instanceof StateGame) ? null : createGameThread(game);
+				game.setInternalInfo(this, snapshot, nextGameId.getAndIncrement(), thread);
+				game.getMessageIds().forEach(id -> messageCache.adopt(id, game.getChannelId()));
+				Optional<String> rejection = registry.register(game);
+				if (rejection.isPresent()) {
+					System.out.println("GAME NOT RESUMED: " + game.getClass().getSimpleName() + " #" + game.getId()
+							+ " - " + rejection.get());
+					continue;
+				}
+				// Launched once its channel and players are fetched, nothing here waits on Discord
+				game.prepareResume().whenComplete((r, e) -> {
+					if (e != null) {
+						System.out.println("GAME NOT RESUMED: " + game.getClass().getSimpleName() + " #"
+								+ game.getId() + " - " + e.getMessage());
+						endGame(game);
+						return;
+					}
+					launchGame(game);
+				});
+				resumed++;
+			} catch (Exception e) {
+				e.printStackTrace();
 			}
-		});
-		thread.setDaemon(true);
-		thread.start();
+		}
+		if (!snapshotList.isEmpty()) {
+			System.out.println("Resuming " + resumed + " of " + snapshotList.size() + " games, read in "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms.");
+		}
 	}
 
 	@Override
-	protected void startUp() {
-		bot.startAsync().awaitRunning();
+	protected void runOneIteration() throws Exception {
+		int expired = routes.removeExpired();
+		if (expired > 0) {
+			System.out.println("Expired " + expired + " awaiting displays. (" + routes.getRouteCount() + " routes, "
+					+ routes.getRetainedActionCount() + " actions retained)");
+		}
+
+		if (LATENCY_LOG_MINUTES > 0 && ++iterationCount % LATENCY_LOG_MINUTES == 0) {
+			System.out.println(latency.getSummary());
+		}
+	}
+
+	private void saveSnapshots(List<Game> games) {
+		long startNanos = System.nanoTime();
+		List<JSONObject> snapshotList = new ArrayList<>();
+		for (Game game : games) {
+			Optional<JSONObject> snapshot = game.snapshot();
+			if (snapshot.isPresent()) {
+				snapshotList.add(snapshot.get());
+			} else {
+				System.out.println("GAME NOT SNAPSHOTTED: " + game.getClass().getSimpleName() + " #" + game.getId()
+						+ " - " + (game.isWaiting() ? "Can't be resumed from here." : "Still busy."));
+			}
+		}
+		try {
+			snapshots.save(snapshotList);
+			System.out.println("Snapshotted " + snapshotList.size() + " of " + games.size() + " games in "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms.");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	void schedule(Runnable task, long delayMillis) {
+		CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, executor).execute(task);
+	}
+
+	@Override
+	protected Scheduler scheduler() {
+		return Scheduler.newFixedDelaySchedule(1, 1, TimeUnit.MINUTES);
 	}
 
-	public <T> Entry<Message, T> waitForDisplay(Display<T> display, MessageChannel channel, Optional<Message> message) {
+	/**
+	 * Renders the display without blocking on Discord. The returned future
+	 * completes with the ID of the message it was shown on once it's there,
+	 * along with the future result of its actions.
+	 */
+	public <T> CompletableFuture<Entry<String, CompletableFuture<T>>> showDisplay(Game game, Display<T> display,
+			MessageChannel channel, Optional<String> messageId) {
+		Optional<Trace> trace = game.takeActionTrace();
+		trace.ifPresent(t -> t.mark(Stage.LOGIC));
+
+		long renderHash = renderHash(display.getBuilder().setTimestamp(null).build(), display.getActionRows());
+
 		display.getBuilder().setTimestamp(Instant.now());
 
 		MessageEmbed messageEmbed = display.getBuilder().build();
 
-		if (message.isPresent()) {
-			message = reloadMessage(message.get());
+		List<LayoutComponent> actionRows = display.getActionRows().stream()
+				.map(l -> ActionRow.of(l.stream().map(b -> b.button).collect(Collectors.toList())))
+				.filter(l -> !l.isEmpty()).collect(Collectors.toList());
+
+		Optional<String> editId = messageId.filter(id -> messageCache.get(id)
+				.map(m -> m.getChannelId().equals(channel.getId())).orElse(false));
+
+		// A private display is always sent again below, so its player is pinged for it
+		Optional<RenderedMessage> unchanged = editId.filter(id -> channel.getType() != ChannelType.PRIVATE)
+				.flatMap(messageCache::get).filter(m -> m.isRendered(renderHash));
+		if (unchanged.isPresent()) {
+			skippedEditCount.increment();
+			displayCount.increment();
+			trace.ifPresent(t -> {
+				t.mark(Stage.RENDER);
+				t.mark(Stage.TOTAL);
+			});
+
+			// The buttons on Discord still carry the IDs they were rendered with
+			return CompletableFuture.completedFuture(new SimpleImmutableEntry<>(editId.get(),
+					awaitActions(game, unchanged.get().getDisplayKey(), display.getActions())));
 		}
 
-		if (message.isPresent() && (!message.get().getChannel().getId().equals(channel.getId())
-				|| channel.getType() == ChannelType.PRIVATE)) {
-			message.get().delete().complete();
-			message = Optional.empty();
+		if (editId.isPresent() && display.isIgnoreReactions()) {
+			// Nobody waits on a frame, so a newer one may replace it before it's sent. An edit
+			// always sets the components, even none, or the last display's buttons stay up
+			MessageEditAction editAction = channel.editMessageEmbedsById(editId.get(), messageEmbed)
+					.setComponents(actionRows);
+			String id = editId.get();
+			// Cached before the offer, which may fail at once and drop it again
+			messageCache.put(id, channel.getId(), renderHash, display.getDisplayKey());
+			frames.offer(channel.getId(), id, editAction, () -> {
+				messageCache.remove(id);
+				invalidatePrivateChannel(channel);
+			});
+			displayCount.increment();
+			trace.ifPresent(t -> {
+				t.mark(Stage.RENDER);
+				t.mark(Stage.TOTAL);
+			});
+			return CompletableFuture.completedFuture(new SimpleImmutableEntry<>(editId.get(),
+					awaitActions(game, display.getDisplayKey(), display.getActions())));
+		}
+		CompletableFuture<Void> drained = editId.map(frames::drain).orElse(CompletableFuture.completedFuture(null));
+
+		Priority priority = display.getActions().isEmpty() ? Priority.STATE : Priority.INTERACTIVE;
+
+		if (editId.isPresent() && channel.getType() == ChannelType.PRIVATE) {
+			rest.submit(channel.getId(), Priority.STATE, channel.deleteMessageById(editId.get()))
+					.whenComplete((r, e) -> {
+						if (e != null) {
+							invalidatePrivateChannel(channel);
+						}
+					});
+			restCallCount.increment();
+			messageCache.remove(editId.get());
+			editId = Optional.empty();
 		}
 
-		List<LayoutComponent> actionRows = display.getActionRows().stream()
-				.map(l -> ActionRow.of(l.stream().map(b -> b.button).collect(Collectors.toList())))
-				.filter(l -> !l.isEmpty()).collect(Collectors.toList());
+		long restStartMillis = System.currentTimeMillis();
+		CompletableFuture<Optional<Message>> edited = CompletableFuture.completedFuture(Optional.empty());
+		if (editId.isPresent()) {
+			String id = editId.get();
+			MessageEditAction editAction = channel.editMessageEmbedsById(id, messageEmbed).setComponents(actionRows);
+			restCallCount.increment();
+			edited = drained.thenCompose(v -> rest.submit(channel.getId(), priority, editAction))
+					.handle((m, e) -> {
+						if (e == null) {
+							return Optional.of(m);
+						}
+						Throwable cause = (e instanceof CompletionException) ? e.getCause() : e;
+						if (!(cause instanceof ErrorResponseException)) {
+							throw new CompletionException(cause);
+						}
+						System.out.println("EDIT FAILED, SENDING NEW MESSAGE - " + cause.getMessage());
+						messageCache.remove(id);
+						invalidatePrivateChannel(channel);
+						return Optional.empty();
+					});
+		}
 
-		if (message.isPresent()) {
-			MessageEditAction editAction = message.get().getChannel().editMessageEmbedsById(message.get().getId(),
-					messageEmbed);
-			if (!actionRows.isEmpty()) {
-				editAction = editAction.setComponents(actionRows);
+		return edited.thenCompose(m -> {
+			if (m.isPresent()) {
+				return CompletableFuture.completedFuture(m.get());
 			}
-			message = Optional.ofNullable(editAction.complete());
-		} else {
 			MessageCreateAction createAction = channel.sendMessageEmbeds(messageEmbed);
 			if (!actionRows.isEmpty()) {
 				createAction = createAction.setComponents(actionRows);
 			}
-			message = Optional.of(createAction.complete());
-		}
-
-		CompletableFuture<T> awaitor = new CompletableFuture<>();
-
-		LinkedHashMap<String, ActionButton<T>> actions = display.getActions();
-		if (!actions.isEmpty()) {
-			awaitingActions.put(message.get().getId(), e -> {
-				if (!actions.containsKey(e.getComponentId())) {
-					return;
+			restCallCount.increment();
+			return rest.submit(channel.getId(), priority, createAction).whenComplete((r, e) -> {
+				if (e != null) {
+					invalidatePrivateChannel(channel);
 				}
+			});
+		}).thenApply(message -> {
+			game.setLastRestMillis(System.currentTimeMillis() - restStartMillis);
+			displayCount.increment();
+			messageCache.put(message.getId(), channel.getId(), renderHash, display.getDisplayKey());
+			trace.ifPresent(t -> {
+				t.mark(Stage.RENDER);
+				t.mark(Stage.TOTAL);
+			});
 
-				ResultAction<T> action = actions.get(e.getComponentId()).action;
-				if (!action.accept(e.getUser())) {
-					return;
-				}
+			return new SimpleImmutableEntry<>(message.getId(),
+					awaitActions(game, display.getDisplayKey(), display.getActions()));
+		});
+	}
 
-				try {
-					T result = action.call(e.getUser());
-					awaitor.complete(result);
-				} catch (Exception e1) {
-					awaitor.completeExceptionally(e1);
-					System.out.println("ACTION EXCEPTIONED - " + e1.getMessage());
-				}
-			});
-		} else {
-			awaitor.complete(null);
+	@Override
+	protected void shutDown() {
+		// Games are only snapshotted once the clicks already taken in have run
+		// out, and every game they set off has come to rest on its next display
+		acceptingActions = false;
+		long deadlineMillis = System.currentTimeMillis() + SHUTDOWN_DRAIN_MILLIS;
+		try {
+			if (!executor.awaitIdle(SHUTDOWN_DRAIN_MILLIS)) {
+				System.out.println("Actions still running at shutdown - " + executor.getStats());
+			}
+			if (!awaitGamesWaiting(deadlineMillis)) {
+				System.out.println("Games still busy at shutdown, they won't be resumed.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
+		List<Game> games = new ArrayList<>(registry.getGames());
+		saveSnapshots(games);
 
-		try {
-			T result = awaitor.get(1, TimeUnit.DAYS);
-			return new SimpleImmutableEntry<>(message.get(), result);
-		} catch (InterruptedException | TimeoutException e) {
-			throw new RuntimeException(e);// XXX Probably a better way
-		} catch (ExecutionException e) {
-			e.getCause().printStackTrace();
+		bot.stopAsync();
+		notifier.shutdown();
+		rest.shutdown();
+		games.forEach(Game::interrupt);
+		saves.shutdown();
+	}
+
+	private synchronized void startGame(SlashCommandEvent e, Game game) {
+		Thread thread = (game instanceof StateGame) ? null : createGameThread(game);
+		game.setInternalInfo(this, e, nextGameId.getAndIncrement(), thread);
+		if (!admitGame(e, game)) {
+			return;
 		}
+		launchGame(game);
+	}
 
-		return new SimpleImmutableEntry<>(message.get(), null);
+	@Override
+	protected void startUp() {
+		bot.startAsync().awaitRunning();
+		bot.getJDA().addEventListener(messageCache);
+		resumeGames();
 	}
 
 }
@@ -1,10 +1,10 @@
 package com.demod.discord.boredgames;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 import com.google.common.collect.ImmutableList;
@@ -55,7 +55,12 @@ public class Display<T> {
 		}
 
 		public ActionButton(ButtonStyle style, Emoji emoji, String label, ResultAction<T> action) {
-			this.button = Button.of(style, Integer.toString(System.identityHashCode(this)), label, emoji);
+			// The display gives the button its real ID when it's added
+			this(Button.of(style, "unassigned", label, emoji), action);
+		}
+
+		private ActionButton(Button button, ResultAction<T> action) {
+			this.button = button;
 			this.action = action;
 		}
 	}
@@ -69,11 +74,12 @@ public class Display<T> {
 		T call(User player);
 	}
 
-	private final Function<Display<T>, T> displayer;
+	private final String displayKey;
+	private final Function<Display<T>, CompletableFuture<T>> sender;
 
 	private final EmbedBuilder builder = new EmbedBuilder();
 
-	private final LinkedHashMap<String, ActionButton<T>> actions = new LinkedHashMap<>();
+	private final List<ActionButton<T>> actions = new ArrayList<>();
 	private final List<List<ActionButton<T>>> actionRows = new ArrayList<>();
 	private boolean nextActionRow = true;
 
@@ -81,12 +87,14 @@ public class Display<T> {
 
 	private boolean ignoreReactions;
 
-	Display(Function<Display<T>, T> displayer) {
-		this.displayer = displayer;
+	Display(String displayKey, Function<Display<T>, CompletableFuture<T>> sender) {
+		this.displayKey = displayKey;
+		this.sender = sender;
 	}
 
 	public Display<T> addAction(ActionButton<T> button) {
-		actions.put(button.button.getId(), button);
+		button = new ActionButton<>(button.button.withId(ActionId.format(displayKey, actions.size())), button.action);
+		actions.add(button);
 		if (!actionRows.isEmpty()
 				&& actionRows.get(actionRows.size() - 1).size() + 1 > button.button.getType().getMaxPerRow()) {
 			nextActionRow = true;
@@ -142,10 +150,18 @@ public class Display<T> {
 		return actionRows;
 	}
 
-	LinkedHashMap<String, ActionButton<T>> getActions() {
+	/**
+	 * @return the actions in the order they were added, which is also the index
+	 *         in their {@link ActionId}
+	 */
+	List<ActionButton<T>> getActions() {
 		return actions;
 	}
 
+	String getDisplayKey() {
+		return displayKey;
+	}
+
 	public EmbedBuilder getBuilder() {
 		return builder;
 	}
@@ -167,7 +183,21 @@ public class Display<T> {
 		nextActionRow = true;
 	}
 
+	/**
+	 * Blocks until an action decides the result, see {@link #sendAsync()}.
+	 *
+	 * @return the result, or null if the deciding action threw
+	 */
 	public T send() {
-		return displayer.apply(this);
+		return Game.await(sendAsync());
+	}
+
+	/**
+	 * Renders the display without blocking on Discord or on the players. The
+	 * returned future completes on the thread that handled the deciding action,
+	 * or right after the display is shown if it has no actions.
+	 */
+	public CompletableFuture<T> sendAsync() {
+		return sender.apply(this);
 	}
 }
@@ -0,0 +1,119 @@
+package com.demod.discord.boredgames;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.demod.discord.boredgames.RestScheduler.Priority;
+
+import net.dv8tion.jda.api.requests.RestAction;
+
+/**
+ * Sends the frames of a message one edit at a time, latest wins. While an
+ * edit is on its way (or held back by a rate limit), only the newest frame
+ * offered after it is kept and the ones in between are dropped, so a busy
+ * channel shows the current state instead of working through a backlog.
+ */
+public class EditCoalescer {
+
+	private static class Slot {
+		private final String channelId;
+		private CompletableFuture<?> inFlight;
+		private RestAction<?> pending;
+		private Runnable pendingOnFailed;
+
+		public Slot(String channelId) {
+			this.channelId = channelId;
+		}
+	}
+
+	private final RestScheduler rest;
+
+	// Key = Message ID
+	private final Map<String, Slot> slots = new HashMap<>();
+
+	private final LongAdder sentCount = new LongAdder();
+	private final LongAdder droppedCount = new LongAdder();
+
+	public EditCoalescer(RestScheduler rest) {
+		this.rest = rest;
+	}
+
+	/**
+	 * Drops any frame still pending for the message. Edits that must always be
+	 * delivered wait for the returned future, so they land after the frame in
+	 * flight.
+	 */
+	public synchronized CompletableFuture<Void> drain(String messageId) {
+		Slot slot = slots.get(messageId);
+		if (slot == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		if (slot.pending != null) {
+			slot.pending = null;
+			slot.pendingOnFailed = null;
+			droppedCount.increment();
+		}
+		// Failures were already reported by the edit itself
+		return slot.inFlight.handle((r, e) -> null);
+	}
+
+	public long getDroppedCount() {
+		return droppedCount.sum();
+	}
+
+	public synchronized int getPendingCount() {
+		return (int) slots.values().stream().filter(s -> s.pending != null).count();
+	}
+
+	public long getSentCount() {
+		return sentCount.sum();
+	}
+
+	/**
+	 * Sends the edit once the message has no other edit in flight, unless a
+	 * newer frame is offered first.
+	 *
+	 * @param onFailed run if the edit is sent and fails
+	 */
+	public synchronized void offer(String channelId, String messageId, RestAction<?> edit, Runnable onFailed) {
+		Slot slot = slots.computeIfAbsent(messageId, k -> new Slot(channelId));
+		if (slot.inFlight == null) {
+			submit(messageId, slot, edit, onFailed);
+		} else {
+			if (slot.pending != null) {
+				droppedCount.increment();
+			}
+			slot.pending = edit;
+			slot.pendingOnFailed = onFailed;
+		}
+	}
+
+	private synchronized void onSent(String messageId, Slot slot) {
+		if (slot.pending != null) {
+			RestAction<?> edit = slot.pending;
+			Runnable onFailed = slot.pendingOnFailed;
+			slot.pending = null;
+			slot.pendingOnFailed = null;
+			submit(messageId, slot, edit, onFailed);
+		} else {
+			slot.inFlight = null;
+			slots.remove(messageId, slot);
+		}
+	}
+
+	private void submit(String messageId, Slot slot, RestAction<?> edit, Runnable onFailed) {
+		sentCount.increment();
+		CompletableFuture<?> sent = rest.submit(slot.channelId, Priority.ANIMATION, edit);
+		// Set before the callback is attached, which runs right away if the edit already failed
+		slot.inFlight = sent;
+		sent.whenComplete((r, e) -> {
+			if (e != null) {
+				System.out.println("FRAME EDIT FAILED - " + e.getMessage());
+				onFailed.run();
+			}
+			onSent(messageId, slot);
+		});
+	}
+}
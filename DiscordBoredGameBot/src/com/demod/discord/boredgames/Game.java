@@ -1,49 +1,220 @@
 package com.demod.discord.boredgames;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
-import com.demod.dcba.GuildSettings;
 import com.demod.dcba.SlashCommandEvent;
+import com.demod.discord.boredgames.AnimationPolicy.Animation;
+import com.demod.discord.boredgames.LatencyStats.Trace;
+import com.demod.discord.boredgames.UserProfileCache.Profile;
 
 import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.entities.channel.ChannelType;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
 
 public abstract class Game {
 
-	private static final String JSONKEY_GUILD_GAMES = "games";
+	static final String JSONKEY_GUILD_GAMES = "games";
 	private static final String JSONKEY_GAME_PLAYERSAVES = "player-saves";
 
+	private static final String JSONKEY_SNAPSHOT_TYPE = "type";
+	private static final String JSONKEY_SNAPSHOT_SAVEKEY = "save-key";
+	private static final String JSONKEY_SNAPSHOT_CHANNEL = "channel";
+	private static final String JSONKEY_SNAPSHOT_GUILD = "guild";
+	private static final String JSONKEY_SNAPSHOT_START = "start";
+	private static final String JSONKEY_SNAPSHOT_WAITED = "waited";
+	private static final String JSONKEY_SNAPSHOT_PHASE = "phase";
+	private static final String JSONKEY_SNAPSHOT_PLAYERS = "players";
+	private static final String JSONKEY_SNAPSHOT_MESSAGE = "message";
+	private static final String JSONKEY_SNAPSHOT_STATE = "state";
+
+	private static final String SAVEKEY_USER_PREFIX = "USER-";
+	// Saves of players across every guild and private game, spread over a
+	// number of save keys so a save writes out only a share of all players.
+	// Changing the number once there are saves loses track of them
+	static final String SAVEKEY_GLOBAL = "GLOBAL";
+	private static final int GLOBAL_SAVE_SHARDS = Integer.getInteger("boredgames.globalSaveShards", 64);
+
+	/**
+	 * Blocks until the result is in.
+	 *
+	 * @return the result, or null if the deciding action threw
+	 */
+	public static <T> T await(CompletableFuture<T> result) {
+		try {
+			return result.get(1, TimeUnit.DAYS);
+		} catch (InterruptedException | TimeoutException e) {
+			throw new RuntimeException(e);// XXX Probably a better way
+		} catch (ExecutionException e) {
+			// Discord refusing the display is fatal, an action throwing is not
+			if (e.getCause() instanceof TimeoutException || e.getCause() instanceof ErrorResponseException) {
+				throw new RuntimeException(e.getCause());
+			}
+			e.getCause().printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Waits for every result, so prompts sent to several players at once take
+	 * as long as the slowest player instead of all of them in turn.
+	 */
+	public static <T> List<T> awaitAll(List<CompletableFuture<T>> results) {
+		return results.stream().map(Game::await).collect(Collectors.toList());
+	}
+
+	/**
+	 * Waits for the first result, then cancels the others so their displays stop
+	 * waiting for actions.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T awaitAny(List<CompletableFuture<T>> results) {
+		try {
+			return await(CompletableFuture.anyOf(results.toArray(new CompletableFuture<?>[0])).thenApply(r -> (T) r));
+		} finally {
+			results.forEach(r -> r.cancel(false));
+		}
+	}
+
+	/**
+	 * Creates an empty game of the type the snapshot was taken from.
+	 */
+	static Game create(JSONObject snapshot) throws ReflectiveOperationException {
+		return Class.forName(snapshot.getString(JSONKEY_SNAPSHOT_TYPE)).asSubclass(Game.class).getDeclaredConstructor()
+				.newInstance();
+	}
+
+	private static Optional<JSONObject> findPlayerSavesJson(JSONObject guildJson, Class<? extends Game> gameType) {
+		return Optional.ofNullable(guildJson.optJSONObject(JSONKEY_GUILD_GAMES))
+				.map(j -> j.optJSONObject(gameType.getSimpleName()))
+				.map(j -> j.optJSONObject(JSONKEY_GAME_PLAYERSAVES));
+	}
+
+	/**
+	 * @return the game type's players across every guild and private game,
+	 *         ranked by the score under the key in their saves
+	 */
+	static Leaderboard getGlobalLeaderboard(SaveCache saves, Class<? extends Game> gameType, String scoreKey,
+			int maxScore) {
+		List<String> saveKeys = IntStream.range(0, GLOBAL_SAVE_SHARDS).mapToObj(i -> SAVEKEY_GLOBAL + "-" + i)
+				.collect(Collectors.toList());
+		return getLeaderboard(saves, SAVEKEY_GLOBAL, saveKeys, gameType, scoreKey, maxScore);
+	}
+
+	/**
+	 * @return a copy of the player's save for the game type across every guild
+	 *         and private game
+	 */
+	static Optional<JSONObject> getGlobalSave(SaveCache saves, Class<? extends Game> gameType, PlayerId player) {
+		return getSave(saves, globalSaveKey(player), gameType, player);
+	}
+
+	/**
+	 * @return the game type's players under the save keys, ranked by the score
+	 *         under the key in their saves
+	 */
+	private static Leaderboard getLeaderboard(SaveCache saves, String boardKey, List<String> saveKeys,
+			Class<? extends Game> gameType, String scoreKey, int maxScore) {
+		return saves.getLeaderboard(boardKey, saveKeys, gameType.getSimpleName(),
+				() -> new Leaderboard(scoreKey, maxScore), (leaderboard, guildJson) -> {
+					findPlayerSavesJson(guildJson, gameType).ifPresent(playerSavesJson -> {
+						for (String userId : playerSavesJson.keySet()) {
+							leaderboard.update(new PlayerId(userId),
+									Optional.of(playerSavesJson.getJSONObject(userId)));
+						}
+					});
+				});
+	}
+
+	/**
+	 * @return a copy of the save
+	 */
+	private static Optional<JSONObject> getSave(SaveCache saves, String saveKey, Class<? extends Game> gameType,
+			PlayerId player) {
+		return saves.read(saveKey, guildJson -> findPlayerSavesJson(guildJson, gameType)
+				.map(j -> j.optJSONObject(player.getUserId())).map(j -> new JSONObject(j.toString())));
+	}
+
+	private static String globalSaveKey(PlayerId player) {
+		return SAVEKEY_GLOBAL + "-" + Math.floorMod(player.getUserId().hashCode(), GLOBAL_SAVE_SHARDS);
+	}
+
 	private int id = -1;
 	private MessageChannel channel;
+	private String channelId;
 	private DiscordBoredGameBot bot;
 	private Thread thread;
+	private String guildId;
+	private long startMillis;
 
-	private final Map<String, Message> messages = new ConcurrentHashMap<>();
+	// Key = Channel ID, Value = Message ID
+	private final Map<String, String> messageIds = new ConcurrentHashMap<>();
+	private final Set<String> playerIds = ConcurrentHashMap.newKeySet();
+	private final AtomicLong nextDisplaySequence = new AtomicLong();
+
+	private volatile String phase = "Starting";
+	private volatile String phaseDescription = "Starting";
+	private volatile long waitingSinceMillis = 0;
+	// More than one while prompts are out to several players at once
+	private int waitingCount = 0;
+	private volatile long waitedMillis = 0;
+	private volatile long lastRestMillis = -1;
+	private final AtomicReference<Trace> actionTrace = new AtomicReference<>();
 
 	private String saveKey;
 
+	// State to load before the game runs again, if it was resumed from a snapshot
+	private JSONObject snapshotState = null;
+	// Key = User ID, players fetched ahead of resuming so loading doesn't block
+	private final Map<String, User> resumedUsers = new ConcurrentHashMap<>();
+
 	private <T> Display<T> display(MessageChannel channel) {
-		Display<T> display = new Display<T>(d -> {
-			String messageKey = channel.getId();
-			Message message = messages.get(messageKey);
-			if (d.getNotify().size() == 1 && channel.getType() == ChannelType.TEXT) {
-				bot.notifyForAction(d.getNotify().iterator().next(), (TextChannel) channel);
-			}
-			Entry<Message, T> entry = bot.waitForDisplay(d, channel, Optional.ofNullable(message));
-			messages.put(messageKey, entry.getKey());
-			return entry.getValue();
+		String messageKey = channel.getId();
+		Display<T> display = new Display<T>(ActionId.displayKey(id, nextDisplaySequence.getAndIncrement()), d -> {
+			notifyForDisplay(d, channel);
+			CompletableFuture<T> result = new CompletableFuture<>();
+			bot.showDisplay(this, d, channel, Optional.ofNullable(messageIds.get(messageKey)))
+					.whenComplete((shown, ex) -> {
+						if (ex != null) {
+							result.completeExceptionally(ex);
+							return;
+						}
+						messageIds.put(messageKey, shown.getKey());
+						// Cancelling the result stops the display waiting for actions
+						result.whenComplete((r, ex2) -> shown.getValue().cancel(false));
+						shown.getValue().whenComplete((r, ex2) -> {
+							if (ex2 != null) {
+								result.completeExceptionally(ex2);
+							} else {
+								result.complete(r);
+							}
+						});
+					});
+			return result;
 		});
 		display.getBuilder().setTitle(getTitle());
 		return display;
@@ -60,7 +231,7 @@ public abstract class Game {
 	}
 
 	public <T> Display<T> displayPrivate(User player) {
-		return display(player.openPrivateChannel().complete());
+		return display(bot.getPrivateChannels().open(player).join());
 	}
 
 	public <T> Display<T> displayPrivate(User player, Consumer<EmbedBuilder> builder) {
@@ -69,36 +240,137 @@ public abstract class Game {
 		return display;
 	}
 
+	/**
+	 * Doesn't wait for the player's private channel to open, so it can be used
+	 * from a callback without holding up the thread it runs on.
+	 */
+	public <T> CompletableFuture<Display<T>> displayPrivateAsync(User player, Consumer<EmbedBuilder> builder) {
+		return bot.getPrivateChannels().open(player).thenApply(c -> {
+			Display<T> display = display(c);
+			builder.accept(display.getBuilder());
+			return display;
+		});
+	}
+
+	/**
+	 * Sends the displays at once, see {@link #awaitAll(List)}.
+	 */
+	public <T> List<T> sendAll(List<Display<T>> displays) {
+		return awaitAll(displays.stream().map(Display::sendAsync).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Sends the displays at once, see {@link #awaitAny(List)}.
+	 */
+	public <T> T sendAny(List<Display<T>> displays) {
+		return awaitAny(displays.stream().map(Display::sendAsync).collect(Collectors.toList()));
+	}
+
+	DiscordBoredGameBot getBot() {
+		return bot;
+	}
+
+	String getChannelId() {
+		return channelId;
+	}
+
+	Optional<String> getGuildId() {
+		return Optional.ofNullable(guildId);
+	}
+
 	int getId() {
 		return id;
 	}
 
-	public Optional<JSONObject> getSave(User player) {
-		return Optional.ofNullable(getSaves().get(player));
+	long getLastRestMillis() {
+		return lastRestMillis;
+	}
+
+	/**
+	 * @return this game's players under the same save key, ranked by the score
+	 *         under the key in their saves
+	 */
+	protected Leaderboard getLeaderboard(String scoreKey, int maxScore) {
+		return getLeaderboard(bot.getSaves(), saveKey, List.of(saveKey), getClass(), scoreKey, maxScore);
+	}
+
+	Collection<String> getMessageIds() {
+		return messageIds.values();
+	}
+
+	public String getPhase() {
+		return phase;
+	}
+
+	String getPhaseDescription() {
+		return phaseDescription;
 	}
 
-	public Map<User, JSONObject> getSaves() {
-		JSONObject guildJson = GuildSettings.get(saveKey);
+	Set<String> getPlayerIds() {
+		return playerIds;
+	}
+
+	private JSONObject getPlayerSavesJson(JSONObject guildJson) {
+		JSONObject gamesJson;
 		if (guildJson.has(JSONKEY_GUILD_GAMES)) {
-			JSONObject gamesJson = guildJson.getJSONObject(JSONKEY_GUILD_GAMES);
-			String gameId = getClass().getSimpleName();
-			if (gamesJson.has(gameId)) {
-				JSONObject gameJson = gamesJson.getJSONObject(gameId);
-				if (gameJson.has(JSONKEY_GAME_PLAYERSAVES)) {
-					Map<User, JSONObject> ret = new LinkedHashMap<>();
-					JSONObject playerSavesJson = gameJson.getJSONObject(JSONKEY_GAME_PLAYERSAVES);
-					for (String userId : playerSavesJson.keySet()) {
-						User player = channel.getJDA().getUserById(userId);
-						JSONObject playerSave = playerSavesJson.getJSONObject(userId);
-						if (player != null) {
-							ret.put(player, playerSave);
-						}
-					}
-					return ret;
-				}
-			}
+			gamesJson = guildJson.getJSONObject(JSONKEY_GUILD_GAMES);
+		} else {
+			guildJson.put(JSONKEY_GUILD_GAMES, gamesJson = new JSONObject());
 		}
-		return new HashMap<>();
+
+		JSONObject gameJson;
+		String gameId = getClass().getSimpleName();
+		if (gamesJson.has(gameId)) {
+			gameJson = gamesJson.getJSONObject(gameId);
+		} else {
+			gamesJson.put(gameId, gameJson = new JSONObject());
+		}
+
+		JSONObject playerSavesJson;
+		if (gameJson.has(JSONKEY_GAME_PLAYERSAVES)) {
+			playerSavesJson = gameJson.getJSONObject(JSONKEY_GAME_PLAYERSAVES);
+		} else {
+			gameJson.put(JSONKEY_GAME_PLAYERSAVES, playerSavesJson = new JSONObject());
+		}
+		return playerSavesJson;
+	}
+
+	/**
+	 * Looks up the names and avatars of the players, for showing the saves of
+	 * just those players.
+	 */
+	public List<Profile> getProfiles(List<PlayerId> players) {
+		return awaitAll(players.stream().map(p -> bot.getProfiles().get(channel.getJDA(), p))
+				.collect(Collectors.toList()));
+	}
+
+	/**
+	 * @return a copy of the save, which can be changed freely and then handed
+	 *         back to {@link #setSave(User, Optional)}
+	 */
+	public Optional<JSONObject> getSave(User player) {
+		return getSave(bot.getSaves(), saveKey, getClass(), PlayerId.of(player));
+	}
+
+	/**
+	 * @return copies of the saves, which can be changed freely and then handed
+	 *         back to {@link #setSaves(Map)}
+	 */
+	public Map<PlayerId, JSONObject> getSaves() {
+		return bot.getSaves().read(saveKey, guildJson -> {
+			Map<PlayerId, JSONObject> ret = new LinkedHashMap<>();
+			findPlayerSavesJson(guildJson, getClass()).ifPresent(playerSavesJson -> {
+				for (String userId : playerSavesJson.keySet()) {
+					JSONObject playerSave = playerSavesJson.getJSONObject(userId);
+					ret.put(new PlayerId(userId), new JSONObject(playerSave.toString()));
+				}
+			});
+			return ret;
+		});
+	}
+
+	long getStartMillis() {
+		return startMillis;
 	}
 
 	Thread getThread() {
@@ -107,8 +379,109 @@ public abstract class Game {
 
 	protected abstract String getTitle();
 
+	long getWaitedMillis() {
+		long sinceMillis = waitingSinceMillis;
+		return waitedMillis + (sinceMillis > 0 ? System.currentTimeMillis() - sinceMillis : 0);
+	}
+
+	long getWaitingMillis() {
+		long sinceMillis = waitingSinceMillis;
+		return sinceMillis > 0 ? System.currentTimeMillis() - sinceMillis : 0;
+	}
+
+	void interrupt() {
+		thread.interrupt();
+	}
+
+	/**
+	 * Only a game waiting on its players can be snapshotted, see
+	 * {@link #snapshot()}.
+	 */
+	boolean isWaiting() {
+		return waitingSinceMillis != 0;
+	}
+
+	/**
+	 * Restores the state written by {@link #saveSnapshot(JSONObject)}. Called
+	 * just before the game runs again, once its channel has been found.
+	 */
+	protected void loadSnapshot(JSONObject json) {
+	}
+
+	private void notifyForDisplay(Display<?> display, MessageChannel channel) {
+		if (display.getNotify().size() == 1 && channel.getType() == ChannelType.TEXT) {
+			bot.notifyForAction(display.getNotify().iterator().next(), (TextChannel) channel);
+		}
+	}
+
+	/**
+	 * Resolves the channel of a game restored from a snapshot and fetches its
+	 * players, without blocking. Completes at once for a game started normally.
+	 */
+	CompletableFuture<Void> prepareResume() {
+		if (snapshotState == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		JDA jda = bot.getJDA();
+		List<CompletableFuture<?>> lookups = new ArrayList<>();
+		for (String userId : playerIds) {
+			// A player who can't be fetched only fails the game if it asks for them
+			lookups.add(jda.retrieveUserById(userId).submit()
+					.handle((u, e) -> u != null ? resumedUsers.put(userId, u) : null));
+		}
+		if (saveKey.startsWith(SAVEKEY_USER_PREFIX)) {
+			lookups.add(jda.retrieveUserById(saveKey.substring(SAVEKEY_USER_PREFIX.length())).submit()
+					.thenCompose(bot.getPrivateChannels()::open).thenAccept(c -> channel = c));
+		} else {
+			channel = jda.getChannelById(MessageChannel.class, channelId);
+		}
+		return CompletableFuture.allOf(lookups.toArray(new CompletableFuture[0]));
+	}
+
+	/**
+	 * Loads the state of a game restored from a snapshot, once
+	 * {@link #prepareResume()} is done. Does nothing for a game started
+	 * normally.
+	 */
+	void resume() {
+		if (snapshotState == null) {
+			return;
+		}
+		JSONObject json = snapshotState;
+		snapshotState = null;
+
+		if (channel == null) {
+			throw new IllegalStateException("Channel " + channelId + " no longer exists.");
+		}
+		loadSnapshot(json);
+		resumedUsers.clear();
+	}
+
+	/**
+	 * Fetches a player stored in a snapshot by their user id. The game's players
+	 * are fetched before it resumes, so this only blocks for anyone else.
+	 */
+	protected User retrieveUser(String userId) {
+		User user = resumedUsers.get(userId);
+		return user != null ? user : channel.getJDA().retrieveUserById(userId).complete();
+	}
+
 	public abstract void run();
 
+	/**
+	 * Writes everything the game needs to carry on from the display it is
+	 * waiting on. Games that can't be resumed, or can't be resumed from where
+	 * they are right now, return false and are not snapshotted.
+	 */
+	protected boolean saveSnapshot(JSONObject json) {
+		return false;
+	}
+
+	void setActionTrace(Trace trace) {
+		actionTrace.set(trace);
+	}
+
 	void setId(int id) {
 		this.id = id;
 	}
@@ -116,57 +489,165 @@ public abstract class Game {
 	void setInternalInfo(DiscordBoredGameBot bot, SlashCommandEvent e, int id, Thread thread) {
 		this.bot = bot;
 		if (e.getChannelType() == ChannelType.PRIVATE) {
-			this.saveKey = "USER-" + e.getUser().getId();
+			this.saveKey = SAVEKEY_USER_PREFIX + e.getUser().getId();
 		} else {
 			this.saveKey = e.getGuild().getId();
 		}
 		this.channel = e.getMessageChannel();
+		this.channelId = channel.getId();
+		this.guildId = e.getChannelType() == ChannelType.PRIVATE ? null : e.getGuild().getId();
 		this.id = id;
 		this.thread = thread;
+		this.startMillis = System.currentTimeMillis();
+		playerIds.add(e.getUser().getId());
 	}
 
-	public void setSave(User player, Optional<JSONObject> playerSave) {
-		Map<User, JSONObject> playerSaves = getSaves();
-		if (playerSave.isPresent()) {
-			playerSaves.put(player, playerSave.get());
-		} else {
-			playerSaves.remove(player);
+	void setInternalInfo(DiscordBoredGameBot bot, JSONObject snapshot, int id, Thread thread) {
+		this.bot = bot;
+		this.saveKey = snapshot.getString(JSONKEY_SNAPSHOT_SAVEKEY);
+		this.channelId = snapshot.getString(JSONKEY_SNAPSHOT_CHANNEL);
+		this.guildId = snapshot.optString(JSONKEY_SNAPSHOT_GUILD, null);
+		this.id = id;
+		this.thread = thread;
+		this.startMillis = snapshot.getLong(JSONKEY_SNAPSHOT_START);
+		this.waitedMillis = snapshot.getLong(JSONKEY_SNAPSHOT_WAITED);
+		this.phase = snapshot.getString(JSONKEY_SNAPSHOT_PHASE);
+		this.phaseDescription = phase;
+		JSONArray playersJson = snapshot.getJSONArray(JSONKEY_SNAPSHOT_PLAYERS);
+		for (int i = 0; i < playersJson.length(); i++) {
+			playerIds.add(playersJson.getString(i));
 		}
-		setSaves(playerSaves);
+		if (snapshot.has(JSONKEY_SNAPSHOT_MESSAGE)) {
+			messageIds.put(channelId, snapshot.getString(JSONKEY_SNAPSHOT_MESSAGE));
+		}
+		this.snapshotState = snapshot.getJSONObject(JSONKEY_SNAPSHOT_STATE);
 	}
 
-	public void setSaves(Map<User, JSONObject> playerSaves) {
-		JSONObject guildJson = GuildSettings.get(saveKey);
+	void setLastRestMillis(long lastRestMillis) {
+		this.lastRestMillis = lastRestMillis;
+	}
 
-		JSONObject gamesJson;
-		if (guildJson.has(JSONKEY_GUILD_GAMES)) {
-			gamesJson = guildJson.getJSONObject(JSONKEY_GUILD_GAMES);
-		} else {
-			guildJson.put(JSONKEY_GUILD_GAMES, gamesJson = new JSONObject());
-		}
+	protected void setPhase(String phase) {
+		this.phase = phase;
+		this.phaseDescription = phase;
+	}
 
-		JSONObject gameJson;
-		String gameId = getClass().getSimpleName();
-		if (gamesJson.has(gameId)) {
-			gameJson = gamesJson.getJSONObject(gameId);
-		} else {
-			gamesJson.put(gameId, gameJson = new JSONObject());
+	/**
+	 * Sets a phase that belongs to one player. Only the phase itself is used to
+	 * group latency stats, the player's name is just for listing the game.
+	 */
+	protected void setPhase(String phase, User player) {
+		this.phase = phase;
+		this.phaseDescription = player.getEffectiveName() + "'s " + phase;
+	}
+
+	/**
+	 * Changes the save in memory only, it is written out with the next flush of
+	 * the {@link SaveCache}.
+	 */
+	public void setSave(User player, Optional<JSONObject> playerSave) {
+		writeSave(saveKey, saveKey, player, s -> playerSave);
+	}
+
+	public void setSaves(Map<PlayerId, JSONObject> playerSaves) {
+		bot.getSaves().write(saveKey, guildJson -> {
+			JSONObject playerSavesJson = getPlayerSavesJson(guildJson);
+			for (Entry<PlayerId, JSONObject> entry : playerSaves.entrySet()) {
+				PlayerId player = entry.getKey();
+				JSONObject playerSave = entry.getValue();
+				playerSavesJson.put(player.getUserId(), new JSONObject(playerSave.toString()));
+			}
+			bot.getSaves().findLeaderboard(saveKey, getClass().getSimpleName())
+					.ifPresent(l -> playerSaves.forEach((p, s) -> l.update(p, Optional.of(s))));
+		});
+	}
+
+	synchronized void setWaiting(boolean waiting) {
+		if (waiting) {
+			if (waitingCount++ == 0) {
+				waitingSinceMillis = System.currentTimeMillis();
+			}
+		} else if (waitingCount > 0 && --waitingCount == 0) {
+			waitedMillis += System.currentTimeMillis() - waitingSinceMillis;
+			waitingSinceMillis = 0;
 		}
+	}
 
-		JSONObject playerSavesJson;
-		if (gameJson.has(JSONKEY_GAME_PLAYERSAVES)) {
-			playerSavesJson = gameJson.getJSONObject(JSONKEY_GAME_PLAYERSAVES);
-		} else {
-			gameJson.put(JSONKEY_GAME_PLAYERSAVES, playerSavesJson = new JSONObject());
+	/**
+	 * Only a game that is waiting on its players is snapshotted, so it is never
+	 * caught halfway through applying a move.
+	 *
+	 * @return the snapshot of this game, or empty if it can't be resumed
+	 */
+	Optional<JSONObject> snapshot() {
+		JSONObject stateJson = new JSONObject();
+		if (waitingSinceMillis == 0 || !saveSnapshot(stateJson)) {
+			return Optional.empty();
 		}
 
-		for (Entry<User, JSONObject> entry : playerSaves.entrySet()) {
-			User player = entry.getKey();
-			JSONObject playerSave = entry.getValue();
-			playerSavesJson.put(player.getId(), playerSave);
+		JSONObject json = new JSONObject();
+		json.put(JSONKEY_SNAPSHOT_TYPE, getClass().getName());
+		json.put(JSONKEY_SNAPSHOT_SAVEKEY, saveKey);
+		json.put(JSONKEY_SNAPSHOT_CHANNEL, channelId);
+		if (guildId != null) {
+			json.put(JSONKEY_SNAPSHOT_GUILD, guildId);
 		}
+		json.put(JSONKEY_SNAPSHOT_START, startMillis);
+		json.put(JSONKEY_SNAPSHOT_WAITED, getWaitedMillis());
+		json.put(JSONKEY_SNAPSHOT_PHASE, phase);
+		json.put(JSONKEY_SNAPSHOT_PLAYERS, new JSONArray(playerIds));
+		String messageId = messageIds.get(channelId);
+		if (messageId != null) {
+			json.put(JSONKEY_SNAPSHOT_MESSAGE, messageId);
+		}
+		json.put(JSONKEY_SNAPSHOT_STATE, stateJson);
+		return Optional.of(json);
+	}
+
+	/**
+	 * Starts an animation in the game's channel, which decides frame by frame
+	 * whether to carry on, see {@link AnimationPolicy}.
+	 */
+	protected Animation startAnimation(int frames, long frameMillis) {
+		return bot.getAnimations().start(channelId, lastRestMillis, frames, frameMillis);
+	}
+
+	/**
+	 * @return the trace of the click that led to the next display, if there is
+	 *         one that hasn't been taken yet
+	 */
+	Optional<Trace> takeActionTrace() {
+		return Optional.ofNullable(actionTrace.getAndSet(null));
+	}
+
+	/**
+	 * Changes the player's save for this game across every save key, starting
+	 * from an empty save if they don't have one yet. The change is made under
+	 * the save's lock, so games ending at the same time never lose each
+	 * other's changes.
+	 */
+	protected void updateGlobalSave(User player, UnaryOperator<JSONObject> update) {
+		writeSave(globalSaveKey(PlayerId.of(player)), SAVEKEY_GLOBAL, player,
+				s -> Optional.of(update.apply(s.orElseGet(JSONObject::new))));
+	}
 
-		GuildSettings.save(saveKey, guildJson);
+	/**
+	 * @param boardKey the key of the leaderboards kept up to date with the save
+	 */
+	private void writeSave(String saveKey, String boardKey, User player,
+			UnaryOperator<Optional<JSONObject>> update) {
+		bot.getSaves().write(saveKey, guildJson -> {
+			JSONObject playerSavesJson = getPlayerSavesJson(guildJson);
+			Optional<JSONObject> playerSave = update.apply(Optional
+					.ofNullable(playerSavesJson.optJSONObject(player.getId())).map(j -> new JSONObject(j.toString())));
+			if (playerSave.isPresent()) {
+				playerSavesJson.put(player.getId(), new JSONObject(playerSave.get().toString()));
+			} else {
+				playerSavesJson.remove(player.getId());
+			}
+			bot.getSaves().findLeaderboard(boardKey, getClass().getSimpleName())
+					.ifPresent(l -> l.update(PlayerId.of(player), playerSave));
+		});
 	}
 
 }
@@ -0,0 +1,152 @@
+package com.demod.discord.boredgames;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import net.dv8tion.jda.api.entities.User;
+
+/**
+ * Running games, indexed by game id, guild, channel and player. Safe to read
+ * from any thread while games register, unregister and gain players. New games
+ * are only admitted while their guild, channel and starting player are under
+ * their limits.
+ */
+public class GameRegistry {
+
+	private static int count(Map<String, Set<Integer>> index, String key) {
+		Set<Integer> ids = index.get(key);
+		return ids == null ? 0 : ids.size();
+	}
+
+	private static void index(Map<String, Set<Integer>> index, String key, int gameId) {
+		index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(gameId);
+	}
+
+	private static void unindex(Map<String, Set<Integer>> index, String key, int gameId) {
+		index.computeIfPresent(key, (k, ids) -> {
+			ids.remove(gameId);
+			return ids.isEmpty() ? null : ids;
+		});
+	}
+
+	private final int guildLimit;
+	private final int channelLimit;
+	private final int playerLimit;
+
+	private final LongAdder admittedCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+
+	// Key = Game ID
+	private final Map<Integer, Game> games = new ConcurrentHashMap<>();
+
+	// Key = Guild ID
+	private final Map<String, Set<Integer>> guildGames = new ConcurrentHashMap<>();
+	// Key = Channel ID
+	private final Map<String, Set<Integer>> channelGames = new ConcurrentHashMap<>();
+	// Key = User ID
+	private final Map<String, Set<Integer>> playerGames = new ConcurrentHashMap<>();
+
+	public GameRegistry(int guildLimit, int channelLimit, int playerLimit) {
+		this.guildLimit = guildLimit;
+		this.channelLimit = channelLimit;
+		this.playerLimit = playerLimit;
+	}
+
+	public void addPlayer(Game game, User player) {
+		if (game.getPlayerIds().add(player.getId()) && games.containsKey(game.getId())) {
+			index(playerGames, player.getId(), game.getId());
+			if (!games.containsKey(game.getId())) {
+				unindex(playerGames, player.getId(), game.getId());
+			}
+		}
+	}
+
+	public Optional<Game> get(int gameId) {
+		return Optional.ofNullable(games.get(gameId));
+	}
+
+	public long getAdmittedCount() {
+		return admittedCount.sum();
+	}
+
+	public List<Game> getChannelGames(String channelId) {
+		return lookup(channelGames, channelId);
+	}
+
+	public int getGameCount() {
+		return games.size();
+	}
+
+	public Collection<Game> getGames() {
+		return Collections.unmodifiableCollection(games.values());
+	}
+
+	public List<Game> getGuildGames(String guildId) {
+		return lookup(guildGames, guildId);
+	}
+
+	public List<Game> getPlayerGames(String userId) {
+		return lookup(playerGames, userId);
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	private List<Game> lookup(Map<String, Set<Integer>> index, String key) {
+		Set<Integer> ids = index.get(key);
+		if (ids == null) {
+			return Collections.emptyList();
+		}
+		return ids.stream().map(games::get).filter(g -> g != null).sorted((g1, g2) -> g1.getId() - g2.getId())
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Registers the game unless that would put its guild, channel or starting
+	 * players over their limit.
+	 *
+	 * @return the reason the game was turned away, if it was
+	 */
+	public synchronized Optional<String> register(Game game) {
+		Optional<String> rejection = Optional.empty();
+		if (game.getGuildId().isPresent() && count(guildGames, game.getGuildId().get()) >= guildLimit) {
+			rejection = Optional.of("This server already has " + guildLimit + " games running.");
+		} else if (count(channelGames, game.getChannelId()) >= channelLimit) {
+			rejection = Optional.of("This channel already has " + channelLimit + " games running.");
+		} else if (game.getPlayerIds().stream().anyMatch(id -> count(playerGames, id) >= playerLimit)) {
+			rejection = Optional.of("You are already playing in " + playerLimit + " games.");
+		}
+		if (rejection.isPresent()) {
+			rejectedCount.increment();
+			return rejection;
+		}
+		admittedCount.increment();
+
+		games.put(game.getId(), game);
+		game.getGuildId().ifPresent(id -> index(guildGames, id, game.getId()));
+		index(channelGames, game.getChannelId(), game.getId());
+		for (String userId : game.getPlayerIds()) {
+			index(playerGames, userId, game.getId());
+		}
+		return Optional.empty();
+	}
+
+	public synchronized void unregister(Game game) {
+		if (games.remove(game.getId()) == null) {
+			return;
+		}
+		game.getGuildId().ifPresent(id -> unindex(guildGames, id, game.getId()));
+		unindex(channelGames, game.getChannelId(), game.getId());
+		for (String userId : game.getPlayerIds()) {
+			unindex(playerGames, userId, game.getId());
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.demod.discord.boredgames;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram in the style of HdrHistogram. Values are counted in
+ * buckets that double in width every 16 buckets, so every value is known to
+ * within about 6% at a fixed memory cost. Recording is lock free.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+	// Roughly 38 hours in microseconds
+	private static final long MAX_MICROS = (1L << 37) - 1;
+
+	private static int index(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int shift = (63 - Long.numberOfLeadingZeros(micros)) - (SUB_BUCKET_BITS - 1);
+		return shift * HALF_SUB_BUCKETS + (int) (micros >> shift);
+	}
+
+	private static long highestMicros(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / HALF_SUB_BUCKETS - 1;
+		long subBucket = index % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	private final AtomicLongArray counts = new AtomicLongArray(index(MAX_MICROS) + 1);
+	private final LongAdder totalCount = new LongAdder();
+	private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+	public long getCount() {
+		return totalCount.sum();
+	}
+
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	/**
+	 * @return the highest value within the bucket that the given percentile of
+	 *         recorded values fall into, or 0 if nothing was recorded
+	 */
+	public long getPercentileMicros(double percentile) {
+		long total = getCount();
+		if (total == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(highestMicros(i), getMaxMicros());
+			}
+		}
+		return getMaxMicros();
+	}
+
+	public void recordNanos(long nanos) {
+		long micros = Math.max(0, Math.min(MAX_MICROS, nanos / 1000));
+		counts.incrementAndGet(index(micros));
+		totalCount.increment();
+		maxMicros.accumulate(micros);
+	}
+}
@@ -0,0 +1,109 @@
+package com.demod.discord.boredgames;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Where the time goes between a button press and the display it leads to,
+ * recorded per stage and tagged with the game type and the phase the button
+ * was pressed in.
+ */
+public class LatencyStats {
+
+	public enum Stage {
+		/** From receiving the click until Discord accepted the acknowledgement. */
+		ACK,
+		/** From dispatching the click until an action thread picked it up. */
+		QUEUE,
+		/** From running the action until the next display started rendering. */
+		LOGIC,
+		/** Reloading and editing or sending the message. */
+		RENDER,
+		/** From receiving the click until the next display was on screen. */
+		TOTAL
+	}
+
+	/**
+	 * Follows one click through the stages. Each mark records the time since the
+	 * previous mark, except ACK and TOTAL which count from when the click came
+	 * in.
+	 */
+	public class Trace {
+		private final String tag;
+		private final long startNanos = System.nanoTime();
+		private long markNanos = startNanos;
+
+		private Trace(String tag) {
+			this.tag = tag;
+		}
+
+		public void mark(Stage stage) {
+			long nanos = System.nanoTime();
+			if (stage == Stage.ACK || stage == Stage.TOTAL) {
+				record(tag, stage, nanos - startNanos);
+			} else {
+				record(tag, stage, nanos - markNanos);
+				markNanos = nanos;
+			}
+		}
+	}
+
+	private static final String TAG_ALL = "All";
+
+	private static String formatMillis(long micros) {
+		return String.format("%.1f", micros / 1000.0);
+	}
+
+	// Key = Game Type / Phase
+	private final Map<String, Map<Stage, LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+
+	private Map<Stage, LatencyHistogram> createStages() {
+		Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+		for (Stage stage : Stage.values()) {
+			stages.put(stage, new LatencyHistogram());
+		}
+		return stages;
+	}
+
+	public LatencyHistogram get(String tag, Stage stage) {
+		return histograms.computeIfAbsent(tag, k -> createStages()).get(stage);
+	}
+
+	/**
+	 * @return the "p50/p99/max" of a histogram, in milliseconds
+	 */
+	public String getPercentiles(String tag, Stage stage) {
+		LatencyHistogram histogram = get(tag, stage);
+		return formatMillis(histogram.getPercentileMicros(50)) + "/" + formatMillis(histogram.getPercentileMicros(99))
+				+ "/" + formatMillis(histogram.getMaxMicros());
+	}
+
+	public String getSummary() {
+		return "Latency ms p50/p99/max (" + get(TAG_ALL, Stage.TOTAL).getCount() + " clicks): "
+				+ List.of(Stage.values()).stream().map(s -> s + " " + getPercentiles(TAG_ALL, s))
+						.collect(Collectors.joining(", "));
+	}
+
+	/**
+	 * @return the tags with any clicks recorded, busiest first
+	 */
+	public List<String> getTags() {
+		List<String> tags = new ArrayList<>(histograms.keySet());
+		tags.remove(TAG_ALL);
+		tags.sort((t1, t2) -> Long.compare(get(t2, Stage.ACK).getCount(), get(t1, Stage.ACK).getCount()));
+		return tags;
+	}
+
+	private void record(String tag, Stage stage, long nanos) {
+		get(tag, stage).recordNanos(nanos);
+		get(TAG_ALL, stage).recordNanos(nanos);
+	}
+
+	public Trace trace(String gameType, String phase) {
+		return new Trace(gameType + " / " + phase);
+	}
+}
@@ -0,0 +1,173 @@
+package com.demod.discord.boredgames;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
+
+import org.json.JSONObject;
+
+/**
+ * Players ranked by a score from their saves. Changing a player's score costs
+ * O(log n), the top of the board is read straight off the ordered scores, and
+ * a player's rank is counted in a Fenwick tree over the possible scores
+ * instead of by walking everyone above them. Players with the same score share
+ * a rank.
+ */
+public class Leaderboard {
+
+	public static class Row {
+		private final PlayerId player;
+		private final int score;
+		private final int rank;
+
+		public Row(PlayerId player, int score, int rank) {
+			this.player = player;
+			this.score = score;
+			this.rank = rank;
+		}
+
+		public PlayerId getPlayer() {
+			return player;
+		}
+
+		public int getRank() {
+			return rank;
+		}
+
+		public int getScore() {
+			return score;
+		}
+	}
+
+	private static class Score {
+		private final PlayerId player;
+		private final int score;
+
+		public Score(PlayerId player, int score) {
+			this.player = player;
+			this.score = score;
+		}
+	}
+
+	private static final Comparator<Score> HIGHEST_FIRST = Comparator.comparingInt((Score s) -> -s.score)
+			.thenComparing(s -> s.player.getUserId());
+
+	private final String scoreKey;
+	private final int maxScore;
+
+	private final NavigableSet<Score> ordered = new TreeSet<>(HIGHEST_FIRST);
+	private final Map<PlayerId, Score> scores = new HashMap<>();
+	// Fenwick tree of how many players have each score, highest score first
+	private final int[] counts;
+
+	/**
+	 * @param scoreKey the key of the score in the players' saves
+	 * @param maxScore the highest score possible, higher scores are counted as
+	 *                 this one when ranking
+	 */
+	public Leaderboard(String scoreKey, int maxScore) {
+		this.scoreKey = scoreKey;
+		this.maxScore = maxScore;
+		counts = new int[maxScore + 2];
+	}
+
+	private void addCount(int score, int delta) {
+		for (int i = index(score); i < counts.length; i += i & -i) {
+			counts[i] += delta;
+		}
+	}
+
+	/**
+	 * @return players with at least the score
+	 */
+	private int countAtLeast(int score) {
+		int count = 0;
+		for (int i = index(score); i > 0; i -= i & -i) {
+			count += counts[i];
+		}
+		return count;
+	}
+
+	public synchronized Optional<Row> find(PlayerId player) {
+		Score score = scores.get(player);
+		if (score == null) {
+			return Optional.empty();
+		}
+		return Optional.of(new Row(player, score.score, getRank(score.score)));
+	}
+
+	/**
+	 * @return how many players have a lower score, as a percentage of all
+	 *         players
+	 */
+	public synchronized double getPercentile(int score) {
+		if (scores.isEmpty()) {
+			return 0;
+		}
+		return 100.0 * (scores.size() - countAtLeast(score)) / scores.size();
+	}
+
+	/**
+	 * @return the rank a player with the score would have
+	 */
+	public synchronized int getRank(int score) {
+		int clamped = Math.max(0, Math.min(maxScore, score));
+		return (clamped == maxScore) ? 1 : countAtLeast(clamped + 1) + 1;
+	}
+
+	public String getScoreKey() {
+		return scoreKey;
+	}
+
+	public synchronized int getSize() {
+		return scores.size();
+	}
+
+	public synchronized List<Row> getTop(int count) {
+		List<Row> rows = new ArrayList<>(Math.min(count, scores.size()));
+		Iterator<Score> iterator = ordered.iterator();
+		while (rows.size() < count && iterator.hasNext()) {
+			Score score = iterator.next();
+			rows.add(new Row(score.player, score.score, getRank(score.score)));
+		}
+		return rows;
+	}
+
+	private int index(int score) {
+		return maxScore - Math.max(0, Math.min(maxScore, score)) + 1;
+	}
+
+	public synchronized void put(PlayerId player, int score) {
+		remove(player);
+		Score entry = new Score(player, score);
+		scores.put(player, entry);
+		ordered.add(entry);
+		addCount(score, 1);
+	}
+
+	public synchronized void remove(PlayerId player) {
+		Score entry = scores.remove(player);
+		if (entry != null) {
+			ordered.remove(entry);
+			addCount(entry.score, -1);
+		}
+	}
+
+	/**
+	 * Brings the player's score in line with their save, taking them off the
+	 * board if the save is gone.
+	 */
+	public void update(PlayerId player, Optional<JSONObject> playerSave) {
+		if (playerSave.isPresent()) {
+			put(player, playerSave.get().optInt(scoreKey, 0));
+		} else {
+			remove(player);
+		}
+	}
+}
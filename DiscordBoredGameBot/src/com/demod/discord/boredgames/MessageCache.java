@@ -0,0 +1,110 @@
+package com.demod.discord.boredgames;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.dv8tion.jda.api.events.message.MessageBulkDeleteEvent;
+import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+
+/**
+ * The messages that running games show their displays on, and a hash of what
+ * was last rendered to each. A cached message is edited straight away instead
+ * of being fetched first, and not at all if the render hasn't changed.
+ * Messages deleted on Discord are dropped as soon as the gateway reports it, so
+ * the next display sends a new one.
+ */
+public class MessageCache extends ListenerAdapter {
+
+	public static class RenderedMessage {
+		private final String channelId;
+		private final long renderHash;
+		private final String displayKey;
+
+		public RenderedMessage(String channelId, long renderHash, String displayKey) {
+			this.channelId = channelId;
+			this.renderHash = renderHash;
+			this.displayKey = displayKey;
+		}
+
+		public String getChannelId() {
+			return channelId;
+		}
+
+		/**
+		 * @return the key in the IDs of the buttons last rendered, or null if the
+		 *         message was adopted
+		 */
+		public String getDisplayKey() {
+			return displayKey;
+		}
+
+		public long getRenderHash() {
+			return renderHash;
+		}
+
+		/**
+		 * @return true if the message already shows a render with this hash, so
+		 *         editing it again would change nothing
+		 */
+		public boolean isRendered(long renderHash) {
+			return displayKey != null && this.renderHash == renderHash;
+		}
+	}
+
+	// Key = Message ID
+	private final Map<String, RenderedMessage> messages = new ConcurrentHashMap<>();
+
+	private final LongAdder deletedCount = new LongAdder();
+
+	/**
+	 * Tracks a message that exists but wasn't rendered by this process, such as
+	 * the one a resumed game was last shown on.
+	 */
+	public void adopt(String messageId, String channelId) {
+		messages.putIfAbsent(messageId, new RenderedMessage(channelId, 0, null));
+	}
+
+	public Optional<RenderedMessage> get(String messageId) {
+		return Optional.ofNullable(messages.get(messageId));
+	}
+
+	public long getDeletedCount() {
+		return deletedCount.sum();
+	}
+
+	public int getSize() {
+		return messages.size();
+	}
+
+	@Override
+	public void onMessageBulkDelete(MessageBulkDeleteEvent event) {
+		for (String messageId : event.getMessageIds()) {
+			if (messages.remove(messageId) != null) {
+				deletedCount.increment();
+			}
+		}
+	}
+
+	@Override
+	public void onMessageDelete(MessageDeleteEvent event) {
+		if (messages.remove(event.getMessageId()) != null) {
+			deletedCount.increment();
+		}
+	}
+
+	public void put(String messageId, String channelId, long renderHash, String displayKey) {
+		messages.put(messageId, new RenderedMessage(channelId, renderHash, displayKey));
+	}
+
+	public void remove(String messageId) {
+		messages.remove(messageId);
+	}
+
+	public void removeAll(Collection<String> messageIds) {
+		messageIds.forEach(messages::remove);
+	}
+}
@@ -0,0 +1,40 @@
+package com.demod.discord.boredgames;
+
+import net.dv8tion.jda.api.entities.User;
+
+/**
+ * The player a save belongs to, by user ID alone. Saves can be read and sorted
+ * without looking anyone up, and only the players actually shown are resolved
+ * through the {@link UserProfileCache}.
+ */
+public final class PlayerId {
+
+	public static PlayerId of(User user) {
+		return new PlayerId(user.getId());
+	}
+
+	private final String userId;
+
+	public PlayerId(String userId) {
+		this.userId = userId;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof PlayerId && ((PlayerId) obj).userId.equals(userId);
+	}
+
+	public String getUserId() {
+		return userId;
+	}
+
+	@Override
+	public int hashCode() {
+		return userId.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return userId;
+	}
+}
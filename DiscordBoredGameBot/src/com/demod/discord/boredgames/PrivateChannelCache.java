@@ -0,0 +1,58 @@
+package com.demod.discord.boredgames;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.entities.channel.concrete.PrivateChannel;
+
+/**
+ * The private channels of players recently sent a prompt or reminder, shared
+ * by every game. A cached channel is used straight away instead of being
+ * opened again, and is dropped as soon as sending to it fails.
+ */
+public class PrivateChannelCache {
+
+	private static final int MAX_CHANNELS = Integer.getInteger("boredgames.privateChannelCacheSize", 1000);
+	private static final long EXPIRE_MINUTES = Long.getLong("boredgames.privateChannelExpireMinutes", 30);
+
+	// Key = User ID
+	private final Cache<String, PrivateChannel> channels = CacheBuilder.newBuilder().maximumSize(MAX_CHANNELS)
+			.expireAfterAccess(EXPIRE_MINUTES, TimeUnit.MINUTES).recordStats().build();
+
+	private final LongAdder openedCount = new LongAdder();
+	private final LongAdder invalidatedCount = new LongAdder();
+
+	public String getStats() {
+		CacheStats stats = channels.stats();
+		return String.format("Private channels: %d cached, %d hits, %d misses, %d opened, %d dropped after failing",
+				channels.size(), stats.hitCount(), stats.missCount(), openedCount.sum(), invalidatedCount.sum());
+	}
+
+	/**
+	 * Drops the player's channel after sending to it failed, so the next
+	 * prompt opens it again.
+	 */
+	public void invalidate(User player) {
+		if (channels.asMap().remove(player.getId()) != null) {
+			invalidatedCount.increment();
+		}
+	}
+
+	public CompletableFuture<PrivateChannel> open(User player) {
+		PrivateChannel channel = channels.getIfPresent(player.getId());
+		if (channel != null) {
+			return CompletableFuture.completedFuture(channel);
+		}
+		return player.openPrivateChannel().submit().thenApply(c -> {
+			openedCount.increment();
+			channels.put(player.getId(), c);
+			return c;
+		});
+	}
+}
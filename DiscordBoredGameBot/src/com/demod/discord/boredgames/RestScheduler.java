@@ -0,0 +1,287 @@
+package com.demod.discord.boredgames;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import net.dv8tion.jda.api.requests.RestAction;
+
+/**
+ * Sends game output to Discord one request at a time per bucket (usually a
+ * channel), most important first. Each bucket stays within Discord's per
+ * channel message limit on its own, so requests wait here in priority order
+ * instead of in JDA's first come, first served queue. Low priority output also
+ * backs off once the global limit is nearly used up.
+ */
+public class RestScheduler {
+
+	public static enum Priority {
+		/** A prompt that a player is waiting on */
+		INTERACTIVE,
+		/** Any other change to the game's state */
+		STATE,
+		/** A frame that will soon be replaced */
+		ANIMATION,
+		/** A reminder outside of the game's channel */
+		NOTIFICATION,
+	}
+
+	private static class Request<T> {
+		private final Priority priority;
+		private final long sequence;
+		private final RestAction<T> action;
+		private final CompletableFuture<T> result = new CompletableFuture<>();
+
+		public Request(Priority priority, long sequence, RestAction<T> action) {
+			this.priority = priority;
+			this.sequence = sequence;
+			this.action = action;
+		}
+
+		public void send(Runnable onDone) {
+			CompletableFuture<T> sent;
+			try {
+				sent = action.submit();
+			} catch (RuntimeException e) {
+				// Nothing was sent, so the bucket can move on straight away
+				onDone.run();
+				result.completeExceptionally(e);
+				return;
+			}
+			sent.whenComplete((r, e) -> {
+				onDone.run();
+				if (e != null) {
+					result.completeExceptionally(e);
+				} else {
+					result.complete(r);
+				}
+			});
+		}
+	}
+
+	private static class Bucket {
+		private final Queue<Request<?>> queue = new PriorityQueue<>(
+				Comparator.comparing((Request<?> r) -> r.priority).thenComparingLong(r -> r.sequence));
+		private final Deque<Long> sentMillis = new ArrayDeque<>();
+		private boolean inFlight = false;
+		private boolean waiting = false;
+	}
+
+	private static final int BUCKET_LIMIT = Integer.getInteger("boredgames.restBucketLimit", 5);
+	private static final long BUCKET_WINDOW_MILLIS = Long.getLong("boredgames.restBucketWindowMillis", 5000);
+	private static final int GLOBAL_LIMIT = Integer.getInteger("boredgames.restGlobalLimit", 50);
+	private static final long GLOBAL_WINDOW_MILLIS = 1000;
+	// Share of the global limit that animation and notifications may use
+	private static final double GLOBAL_LOW_PRIORITY_SHARE = 0.75;
+
+	/**
+	 * Forgets sends that have left the window, and finds when the next one is
+	 * allowed.
+	 */
+	private static long readyMillis(Deque<Long> sentMillis, int limit, long windowMillis, long nowMillis) {
+		while (!sentMillis.isEmpty() && sentMillis.peekFirst() + windowMillis <= nowMillis) {
+			sentMillis.pollFirst();
+		}
+		if (sentMillis.size() < limit) {
+			return nowMillis;
+		}
+		return sentMillis.peekFirst() + windowMillis;
+	}
+
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setNameFormat("rest-scheduler").setDaemon(true).build());
+
+	private final int bucketLimit;
+	private final long bucketWindowMillis;
+	private final int globalLimit;
+	private final long globalWindowMillis;
+
+	// Key = Bucket ID
+	private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+	private final Deque<Long> globalSentMillis = new ArrayDeque<>();
+
+	private volatile boolean shutdown = false;
+
+	private final AtomicLong nextSequence = new AtomicLong();
+	private final LongAdder sentCount = new LongAdder();
+	private final LongAdder delayedCount = new LongAdder();
+
+	public RestScheduler() {
+		this(BUCKET_LIMIT, BUCKET_WINDOW_MILLIS, GLOBAL_LIMIT, GLOBAL_WINDOW_MILLIS);
+	}
+
+	/**
+	 * @param bucketLimit requests sent per bucket within its window
+	 * @param globalLimit requests sent across all buckets within the global
+	 *                    window
+	 */
+	RestScheduler(int bucketLimit, long bucketWindowMillis, int globalLimit, long globalWindowMillis) {
+		this.bucketLimit = bucketLimit;
+		this.bucketWindowMillis = bucketWindowMillis;
+		this.globalLimit = globalLimit;
+		this.globalWindowMillis = globalWindowMillis;
+	}
+
+	private void dispatch(String bucketId, Bucket bucket) {
+		Request<?> request;
+		synchronized (bucket) {
+			bucket.waiting = false;
+			if (shutdown || bucket.inFlight || bucket.queue.isEmpty()) {
+				return;
+			}
+
+			long nowMillis = System.currentTimeMillis();
+			long readyMillis = readyMillis(bucket.sentMillis, bucketLimit, bucketWindowMillis, nowMillis);
+			Priority priority = bucket.queue.peek().priority;
+			int limit = priority.compareTo(Priority.ANIMATION) >= 0
+					? (int) (globalLimit * GLOBAL_LOW_PRIORITY_SHARE)
+					: globalLimit;
+			synchronized (globalSentMillis) {
+				readyMillis = Math.max(readyMillis,
+						readyMillis(globalSentMillis, limit, globalWindowMillis, nowMillis));
+				if (readyMillis <= nowMillis) {
+					globalSentMillis.addLast(nowMillis);
+				}
+			}
+			if (readyMillis > nowMillis) {
+				bucket.waiting = true;
+				delayedCount.increment();
+				timer.schedule(() -> dispatch(bucketId, bucket), readyMillis - nowMillis, TimeUnit.MILLISECONDS);
+				return;
+			}
+
+			request = bucket.queue.poll();
+			bucket.sentMillis.addLast(nowMillis);
+			bucket.inFlight = true;
+		}
+
+		sentCount.increment();
+		request.send(() -> {
+			synchronized (bucket) {
+				bucket.inFlight = false;
+				// Counted from the answer instead, since Discord may have taken it in later than it left
+				bucket.sentMillis.pollLast();
+				bucket.sentMillis.addLast(System.currentTimeMillis());
+				if (!shutdown && bucket.queue.isEmpty()) {
+					timer.schedule(() -> removeIfIdle(bucketId, bucket), bucketWindowMillis,
+							TimeUnit.MILLISECONDS);
+				}
+			}
+			dispatch(bucketId, bucket);
+		});
+	}
+
+	public long getDelayedCount() {
+		return delayedCount.sum();
+	}
+
+	/**
+	 * @return requests waiting to be sent in the bucket
+	 */
+	public int getQueueDepth(String bucketId) {
+		Bucket bucket = buckets.get(bucketId);
+		if (bucket == null) {
+			return 0;
+		}
+		synchronized (bucket) {
+			return bucket.queue.size();
+		}
+	}
+
+	/**
+	 * @return Key = Bucket ID, Value = requests waiting to be sent, busiest
+	 *         first
+	 */
+	public Map<String, Integer> getQueueDepths() {
+		Map<String, Integer> depths = new LinkedHashMap<>();
+		buckets.entrySet().stream().map(e -> {
+			synchronized (e.getValue()) {
+				return Map.entry(e.getKey(), e.getValue().queue.size());
+			}
+		}).filter(e -> e.getValue() > 0).sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+				.forEachOrdered(e -> depths.put(e.getKey(), e.getValue()));
+		return depths;
+	}
+
+	public long getSentCount() {
+		return sentCount.sum();
+	}
+
+	public String getStats() {
+		Map<String, Integer> depths = getQueueDepths();
+		return String.format("REST: %d sent, %d delayed by limits, %d queued in %d buckets (deepest %d)",
+				getSentCount(), getDelayedCount(), depths.values().stream().mapToInt(i -> i).sum(), depths.size(),
+				depths.values().stream().findFirst().orElse(0));
+	}
+
+	private void removeIfIdle(String bucketId, Bucket bucket) {
+		synchronized (bucket) {
+			readyMillis(bucket.sentMillis, bucketLimit, bucketWindowMillis, System.currentTimeMillis());
+			if (!bucket.inFlight && !bucket.waiting && bucket.queue.isEmpty() && bucket.sentMillis.isEmpty()) {
+				buckets.remove(bucketId, bucket);
+			}
+		}
+	}
+
+	/**
+	 * Stops sending, and fails every request still waiting to be sent.
+	 * Requests submitted after this fail straight away.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		List<Request<?>> unsent = new ArrayList<>();
+		for (Bucket bucket : buckets.values()) {
+			synchronized (bucket) {
+				unsent.addAll(bucket.queue);
+				bucket.queue.clear();
+			}
+		}
+		// Only once every bucket has seen the flag, so none is still scheduling on the timer
+		timer.shutdownNow();
+		unsent.forEach(r -> r.result.completeExceptionally(new IllegalStateException("REST scheduler shut down")));
+		if (!unsent.isEmpty()) {
+			System.out.println("REST scheduler shut down with " + unsent.size() + " requests unsent.");
+		}
+	}
+
+	/**
+	 * Queues the request behind any more important ones for the same bucket.
+	 * The future completes on a JDA callback thread.
+	 */
+	public <T> CompletableFuture<T> submit(String bucketId, Priority priority, RestAction<T> action) {
+		Request<T> request = new Request<>(priority, nextSequence.getAndIncrement(), action);
+		while (true) {
+			Bucket bucket = buckets.computeIfAbsent(bucketId, k -> new Bucket());
+			synchronized (bucket) {
+				if (buckets.get(bucketId) != bucket) {
+					continue;
+				}
+				if (shutdown) {
+					request.result.completeExceptionally(new IllegalStateException("REST scheduler shut down"));
+					return request.result;
+				}
+				bucket.queue.add(request);
+				if (bucket.inFlight || bucket.waiting) {
+					return request.result;
+				}
+			}
+			dispatch(bucketId, bucket);
+			return request.result;
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package com.demod.discord.boredgames;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.json.JSONObject;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Holds the save documents of guilds (and of players' private games) in
+ * memory, in front of the {@link SaveStore}. Reads are served from memory and
+ * writes only mark the document dirty, so games never wait on the disk. Dirty
+ * documents are written out together on an interval and on shutdown, however
+ * many times they changed in between. Clean documents that haven't been used
+ * for a while are dropped from memory after a flush, and loaded again when
+ * next needed. Leaderboards outlive the documents they were built from, so a
+ * reloaded document doesn't mean a rescan.
+ */
+public class SaveCache {
+
+	private static class Board {
+		private final Leaderboard leaderboard;
+		private final CompletableFuture<Void> built = new CompletableFuture<>();
+		private volatile long accessMillis;
+
+		public Board(Leaderboard leaderboard, long accessMillis) {
+			this.leaderboard = leaderboard;
+			this.accessMillis = accessMillis;
+		}
+	}
+
+	private static class Document {
+		private final JSONObject json;
+		private long accessMillis;
+		// Set under the document's lock once it has left the cache
+		private boolean evicted = false;
+
+		public Document(JSONObject json, long accessMillis) {
+			this.json = json;
+			this.accessMillis = accessMillis;
+		}
+	}
+
+	private static final long FLUSH_INTERVAL_MILLIS = Long.getLong("boredgames.saveFlushIntervalMillis", 30000);
+	private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(Long.getLong("boredgames.saveIdleMinutes", 30));
+	private static final long BOARD_IDLE_MILLIS = TimeUnit.MINUTES
+			.toMillis(Long.getLong("boredgames.leaderboardIdleMinutes", 24 * 60));
+
+	private static String boardId(String boardKey, String gameId) {
+		return boardKey + "/" + gameId;
+	}
+
+	private final SaveStore store;
+	private final long idleMillis;
+	private final long boardIdleMillis;
+	private final LongSupplier clock;
+
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setNameFormat("save-flusher").setDaemon(true).build());
+
+	// Key = Save Key
+	private final Map<String, Document> documents = new ConcurrentHashMap<>();
+	private final Set<String> dirtyKeys = ConcurrentHashMap.newKeySet();
+	// Key = Board Key (the save key, for a board of a single document) / Game ID
+	private final Map<String, Board> leaderboards = new ConcurrentHashMap<>();
+
+	private final LatencyHistogram flushLatency = new LatencyHistogram();
+	private final LongAdder writeCount = new LongAdder();
+	private final LongAdder coalescedCount = new LongAdder();
+	private final LongAdder flushedCount = new LongAdder();
+	private final LongAdder failedCount = new LongAdder();
+	private final LongAdder evictedCount = new LongAdder();
+	private final LongAccumulator peakDirtyCount = new LongAccumulator(Math::max, 0);
+
+	public SaveCache(SaveStore store) {
+		this(store, FLUSH_INTERVAL_MILLIS, IDLE_MILLIS, BOARD_IDLE_MILLIS, System::currentTimeMillis);
+	}
+
+	/**
+	 * @param clock the current time in milliseconds, which documents and
+	 *              leaderboards go idle by
+	 */
+	SaveCache(SaveStore store, long flushIntervalMillis, long idleMillis, long boardIdleMillis, LongSupplier clock) {
+		this.store = store;
+		this.idleMillis = idleMillis;
+		this.boardIdleMillis = boardIdleMillis;
+		this.clock = clock;
+		timer.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * A writer finding the board counts as using it, since it keeps the board
+	 * up to date.
+	 *
+	 * @return the game's leaderboard, if it was asked for and hasn't gone idle
+	 *         since, even if it is still being built
+	 */
+	public Optional<Leaderboard> findLeaderboard(String boardKey, String gameId) {
+		Board board = leaderboards.get(boardId(boardKey, gameId));
+		if (board == null) {
+			return Optional.empty();
+		}
+		board.accessMillis = clock.getAsLong();
+		return Optional.of(board.leaderboard);
+	}
+
+	/**
+	 * Drops the documents that are clean and haven't been used for a while.
+	 * Only runs as part of a flush, so a document can't fail to save after it
+	 * was dropped. Leaderboards are dropped on an idle time of their own, much
+	 * longer since they are small next to their documents and slow to build.
+	 */
+	private void evictIdle() {
+		long boardIdleSinceMillis = clock.getAsLong() - boardIdleMillis;
+		leaderboards.values().removeIf(b -> b.built.isDone() && b.accessMillis <= boardIdleSinceMillis);
+
+		long idleSinceMillis = clock.getAsLong() - idleMillis;
+		for (Map.Entry<String, Document> entry : documents.entrySet()) {
+			String saveKey = entry.getKey();
+			Document document = entry.getValue();
+			synchronized (document) {
+				if (document.accessMillis > idleSinceMillis || dirtyKeys.contains(saveKey)) {
+					continue;
+				}
+				document.evicted = true;
+				documents.remove(saveKey, document);
+			}
+			evictedCount.increment();
+		}
+	}
+
+	/**
+	 * Writes out every dirty document, then drops idle clean ones. A document
+	 * that fails to save stays dirty and is tried again on the next flush.
+	 */
+	public synchronized void flush() {
+		if (!dirtyKeys.isEmpty()) {
+			long startNanos = System.nanoTime();
+			List<String> failedKeys = new ArrayList<>();
+			for (Iterator<String> iterator = dirtyKeys.iterator(); iterator.hasNext();) {
+				String saveKey = iterator.next();
+				// Removed first, so a write made while saving marks it dirty again
+				iterator.remove();
+				Document document = documents.get(saveKey);
+				String json;
+				synchronized (document) {
+					json = document.json.toString();
+				}
+				try {
+					store.save(saveKey, json);
+					flushedCount.increment();
+				} catch (Exception e) {
+					e.printStackTrace();
+					failedKeys.add(saveKey);
+					failedCount.increment();
+				}
+			}
+			dirtyKeys.addAll(failedKeys);
+			flushLatency.recordNanos(System.nanoTime() - startNanos);
+		}
+		evictIdle();
+	}
+
+	public int getCachedCount() {
+		return documents.size();
+	}
+
+	public int getDirtyCount() {
+		return dirtyKeys.size();
+	}
+
+	/**
+	 * Leaderboards are built from the saves in their documents the first time
+	 * they are asked for, and kept in memory after that. Writers keep them up
+	 * to date through {@link #findLeaderboard(String, String)}. A board is
+	 * findable while it is being built, and each document is read into it under
+	 * the document's lock, so no write made in the meantime is missed.
+	 * <p>
+	 * A board is kept when its documents are evicted, as the writers that
+	 * reload them keep it up to date all the same. A board over a single
+	 * document is kept under its save key, and one over several documents
+	 * under a key of its own.
+	 *
+	 * @param creator makes the empty board
+	 * @param filler  adds the saves in a document to the board
+	 */
+	public Leaderboard getLeaderboard(String boardKey, List<String> saveKeys, String gameId,
+			Supplier<Leaderboard> creator, BiConsumer<Leaderboard, JSONObject> filler) {
+		Board[] created = new Board[1];
+		Board board = leaderboards.computeIfAbsent(boardId(boardKey, gameId),
+				k -> created[0] = new Board(creator.get(), clock.getAsLong()));
+		board.accessMillis = clock.getAsLong();
+		if (created[0] != null) {
+			try {
+				for (String saveKey : saveKeys) {
+					withDocument(saveKey, d -> {
+						filler.accept(board.leaderboard, d.json);
+						return null;
+					});
+				}
+				board.built.complete(null);
+			} catch (RuntimeException e) {
+				leaderboards.remove(boardId(boardKey, gameId), board);
+				board.built.completeExceptionally(e);
+				throw e;
+			}
+		}
+		board.built.join();
+		return board.leaderboard;
+	}
+
+	public String getStats() {
+		return String.format(
+				"Saves: %d writes (%d coalesced), %d dirty (peak %d), %d flushed, %d failed, flush %.1f/%.1f ms, "
+						+ "%d cached, %d evicted, %d migrated, %d leaderboards",
+				writeCount.sum(), coalescedCount.sum(), getDirtyCount(), peakDirtyCount.get(), flushedCount.sum(),
+				failedCount.sum(), flushLatency.getPercentileMicros(50) / 1000.0,
+				flushLatency.getPercentileMicros(99) / 1000.0, getCachedCount(), evictedCount.sum(),
+				store.getMigratedCount(), leaderboards.size());
+	}
+
+	/**
+	 * The reader must not keep any part of the document, copying out what it
+	 * needs instead.
+	 */
+	public <R> R read(String saveKey, Function<JSONObject, R> reader) {
+		return withDocument(saveKey, d -> reader.apply(d.json));
+	}
+
+	/**
+	 * Stops flushing on the interval, and writes out what is still dirty.
+	 */
+	public void shutdown() {
+		timer.shutdownNow();
+		flush();
+	}
+
+	public void write(String saveKey, Consumer<JSONObject> writer) {
+		withDocument(saveKey, d -> {
+			writer.accept(d.json);
+			// Marked under the lock, so the document can't be evicted in between
+			if (!dirtyKeys.add(saveKey)) {
+				coalescedCount.increment();
+			}
+			return null;
+		});
+		writeCount.increment();
+		peakDirtyCount.accumulate(dirtyKeys.size());
+	}
+
+	/**
+	 * Runs the operation under the document's lock, loading the document first
+	 * if it isn't in memory. Never runs it on a document that was evicted in the
+	 * meantime, whose changes would be lost.
+	 */
+	private <R> R withDocument(String saveKey, Function<Document, R> operation) {
+		while (true) {
+			Document document = documents.computeIfAbsent(saveKey,
+					k -> new Document(store.load(k), clock.getAsLong()));
+			synchronized (document) {
+				if (document.evicted) {
+					continue;
+				}
+				document.accessMillis = clock.getAsLong();
+				return operation.apply(document);
+			}
+		}
+	}
+}
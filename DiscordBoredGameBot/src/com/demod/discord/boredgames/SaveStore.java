@@ -0,0 +1,89 @@
+package com.demod.discord.boredgames;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.json.JSONObject;
+
+import com.demod.dcba.GuildSettings;
+
+/**
+ * Keeps the save document of each save key (a guild, or a player's private
+ * games) in a file of its own, so saving one guild writes only that guild's
+ * data. Each file is written to a temporary file and moved into place.
+ *
+ * Save keys without a file yet take their saves from {@link GuildSettings},
+ * where all saves used to be kept together with the rest of each guild's
+ * settings, and move over the first time they are saved.
+ */
+public class SaveStore {
+
+	private final Path directory;
+	private final Function<String, JSONObject> legacyLoader;
+
+	private final LongAdder migratedCount = new LongAdder();
+
+	public SaveStore(Path directory) {
+		this(directory, GuildSettings::get);
+	}
+
+	/**
+	 * @param legacyLoader reads the settings a save key's saves used to be kept
+	 *                     in
+	 */
+	public SaveStore(Path directory, Function<String, JSONObject> legacyLoader) {
+		this.directory = directory;
+		this.legacyLoader = legacyLoader;
+	}
+
+	private Path file(String saveKey) {
+		return directory.resolve(URLEncoder.encode(saveKey, StandardCharsets.UTF_8) + ".json");
+	}
+
+	/**
+	 * @return save keys that had saves in the old settings file, read from it
+	 *         so far
+	 */
+	public long getMigratedCount() {
+		return migratedCount.sum();
+	}
+
+	/**
+	 * @throws UncheckedIOException if the save key has a file but it can't be
+	 *                              read, rather than let it be overwritten
+	 */
+	public JSONObject load(String saveKey) {
+		Path file = file(saveKey);
+		if (!Files.exists(file)) {
+			// The global saves never were in the old settings, so aren't looked up there
+			JSONObject legacy = saveKey.startsWith(Game.SAVEKEY_GLOBAL) ? null : legacyLoader.apply(saveKey);
+			JSONObject legacyGames = (legacy != null) ? legacy.optJSONObject(Game.JSONKEY_GUILD_GAMES) : null;
+			if (legacyGames == null || legacyGames.length() == 0) {
+				return new JSONObject();
+			}
+			migratedCount.increment();
+			// Only the saves are copied, the rest of the settings stay behind
+			return new JSONObject().put(Game.JSONKEY_GUILD_GAMES, new JSONObject(legacyGames.toString()));
+		}
+		try {
+			return new JSONObject(Files.readString(file));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void save(String saveKey, String json) throws IOException {
+		Files.createDirectories(directory);
+		Path file = file(saveKey);
+		Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.writeString(tempFile, json);
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -0,0 +1,58 @@
+package com.demod.discord.boredgames;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Keeps the snapshots of games that were running when the bot shut down, so
+ * they can be picked up again on the next start. The whole set is written to
+ * a temporary file and moved into place, and set aside once it is loaded.
+ */
+public class SnapshotStore {
+
+	private static final String JSONKEY_GAMES = "games";
+
+	private final Path file;
+
+	public SnapshotStore(Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * Reads the stored snapshots and moves the file aside so they are only
+	 * resumed once.
+	 */
+	public List<JSONObject> load() {
+		if (!Files.exists(file)) {
+			return Collections.emptyList();
+		}
+		try {
+			JSONArray gamesJson = new JSONObject(Files.readString(file)).getJSONArray(JSONKEY_GAMES);
+			List<JSONObject> snapshots = new ArrayList<>(gamesJson.length());
+			for (int i = 0; i < gamesJson.length(); i++) {
+				snapshots.add(gamesJson.getJSONObject(i));
+			}
+			Files.move(file, file.resolveSibling(file.getFileName() + ".old"), StandardCopyOption.REPLACE_EXISTING);
+			return snapshots;
+		} catch (Exception e) {
+			e.printStackTrace();
+			return Collections.emptyList();
+		}
+	}
+
+	public void save(List<JSONObject> snapshots) throws IOException {
+		JSONObject json = new JSONObject();
+		json.put(JSONKEY_GAMES, new JSONArray(snapshots));
+		Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.writeString(tempFile, json.toString());
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -0,0 +1,137 @@
+package com.demod.discord.boredgames;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * A game written as a chain of states instead of a blocking {@link #run()}
+ * loop. Each state shows a display and names the state that follows its
+ * result, so the bot resumes the game from the action handler and nothing is
+ * parked while a player takes their time.
+ */
+public abstract class StateGame extends Game {
+
+	public static final class State<T> {
+		private final Display<T> display;
+		private final long delayMillis;
+		private final Function<T, State<?>> next;
+
+		private State(Display<T> display, long delayMillis, Function<T, State<?>> next) {
+			this.display = display;
+			this.delayMillis = delayMillis;
+			this.next = next;
+		}
+	}
+
+	private volatile boolean stopped = false;
+	private Runnable onEnd;
+
+	/**
+	 * Shows the display, then continues with the state returned by next. A null
+	 * state ends the game.
+	 */
+	protected <T> State<T> await(Display<T> display, Function<T, State<?>> next) {
+		return new State<>(display, 0, next);
+	}
+
+	protected State<Void> delay(long delayMillis, Supplier<State<?>> next) {
+		return new State<>(null, delayMillis, r -> next.get());
+	}
+
+	private void end() {
+		stopped = true;
+		onEnd.run();
+	}
+
+	private <T> void enter(State<T> state) {
+		if (state == null || stopped) {
+			end();
+			return;
+		}
+
+		if (state.display == null) {
+			getBot().schedule(() -> step(state, null), state.delayMillis);
+			return;
+		}
+
+		CompletableFuture<T> result;
+		try {
+			result = state.display.sendAsync();
+		} catch (Throwable ex) {
+			ex.printStackTrace();
+			System.err.println("GAME IS KILL :(");
+			end();
+			return;
+		}
+
+		result.orTimeout(1, TimeUnit.DAYS).whenComplete((r, ex) -> {
+			if (ex != null) {
+				ex.printStackTrace();
+				end();
+			} else {
+				step(state, r);
+			}
+		});
+	}
+
+	protected <T> State<T> finish(Display<T> display) {
+		return await(display, r -> null);
+	}
+
+	@Override
+	void interrupt() {
+		stopped = true;
+	}
+
+	@Override
+	public final void run() {
+		State<?> state = start();
+		while (state != null) {
+			state = runState(state);
+		}
+	}
+
+	private <T> State<?> runState(State<T> state) {
+		T result = null;
+		if (state.display != null) {
+			result = state.display.send();
+		} else {
+			Uninterruptibles.sleepUninterruptibly(state.delayMillis, TimeUnit.MILLISECONDS);
+		}
+		return state.next.apply(result);
+	}
+
+	protected abstract State<?> start();
+
+	void start(Runnable onEnd) {
+		this.onEnd = onEnd;
+		State<?> state;
+		try {
+			resume();
+			state = start();
+		} catch (Throwable ex) {
+			ex.printStackTrace();
+			System.err.println("GAME IS KILL :(");
+			end();
+			return;
+		}
+		enter(state);
+	}
+
+	private <T> void step(State<T> state, T result) {
+		State<?> next;
+		try {
+			next = state.next.apply(result);
+		} catch (Throwable ex) {
+			ex.printStackTrace();
+			System.err.println("GAME IS KILL :(");
+			end();
+			return;
+		}
+		enter(next);
+	}
+}
@@ -0,0 +1,70 @@
+package com.demod.discord.boredgames;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Hashed timer wheel of items that fall due on a tick. Adding an item is O(1),
+ * and each tick only looks at the items in its own slot. Items due further out
+ * than one turn of the wheel wait in their slot until the wheel comes round to
+ * them again. Not thread safe, it is meant to be driven by a single ticker
+ * thread.
+ */
+class TimerWheel<T> {
+
+	private final ToLongFunction<T> deadlineTick;
+	private final Predicate<T> cancelled;
+
+	private final List<Queue<T>> slots;
+	private long tick = 0;
+
+	/**
+	 * @param deadlineTick the tick the item falls due on
+	 * @param cancelled    items that are cancelled are dropped without falling
+	 *                     due
+	 */
+	public TimerWheel(int size, ToLongFunction<T> deadlineTick, Predicate<T> cancelled) {
+		this.deadlineTick = deadlineTick;
+		this.cancelled = cancelled;
+		slots = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			slots.add(new ArrayDeque<>());
+		}
+	}
+
+	/**
+	 * Items whose deadline has already passed fall due on the next tick.
+	 */
+	public void add(T item) {
+		slots.get((int) (Math.max(deadlineTick.applyAsLong(item), tick) % slots.size())).add(item);
+	}
+
+	/**
+	 * @return the items that fell due on this tick, before moving on to the
+	 *         next one
+	 */
+	public List<T> advance() {
+		List<T> due = new ArrayList<>();
+		Iterator<T> iter = slots.get((int) (tick % slots.size())).iterator();
+		while (iter.hasNext()) {
+			T item = iter.next();
+			if (cancelled.test(item)) {
+				iter.remove();
+			} else if (deadlineTick.applyAsLong(item) <= tick) {
+				iter.remove();
+				due.add(item);
+			}
+		}
+		tick++;
+		return due;
+	}
+
+	public long getTick() {
+		return tick;
+	}
+}
@@ -0,0 +1,174 @@
+package com.demod.discord.boredgames;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import com.demod.discord.boredgames.RestScheduler.Priority;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+
+/**
+ * Sends "your turn" reminders from a hashed timer wheel. Scheduling or
+ * cancelling a reminder is O(1), and only the reminders in the current slot
+ * are looked at on each tick. Reminders are delivered at the lowest priority
+ * of the {@link RestScheduler} and retried with backoff if they fail.
+ */
+public class TurnNotifier {
+
+	private static class Reminder {
+		private final User player;
+		private final TextChannel channel;
+		private final long dueMillis;
+		private final int attempt;
+		private volatile boolean cancelled = false;
+		private long deadlineTick;
+
+		public Reminder(User player, TextChannel channel, long dueMillis, int attempt) {
+			this.player = player;
+			this.channel = channel;
+			this.dueMillis = dueMillis;
+			this.attempt = attempt;
+		}
+	}
+
+	private static final long TICK_MILLIS = 1000;
+	private static final int WHEEL_SIZE = 512;
+	private static final int MAX_ATTEMPTS = 3;
+	private static final long RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+	private final RestScheduler rest;
+	private final PrivateChannelCache privateChannels;
+
+	private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setNameFormat("turn-notifier").setDaemon(true).build());
+
+	// Only touched by the ticker thread
+	private final TimerWheel<Reminder> wheel = new TimerWheel<>(WHEEL_SIZE, r -> r.deadlineTick, r -> r.cancelled);
+	private final long startMillis = System.currentTimeMillis();
+
+	private final Queue<Reminder> incoming = new ConcurrentLinkedQueue<>();
+	// Key = User ID
+	private final Map<String, Reminder> pending = new ConcurrentHashMap<>();
+
+	private final AtomicLong deliveredCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong lagMillisTotal = new AtomicLong();
+	private final LongAccumulator lagMillisMax = new LongAccumulator(Math::max, 0);
+
+	public TurnNotifier(RestScheduler rest, PrivateChannelCache privateChannels) {
+		this.rest = rest;
+		this.privateChannels = privateChannels;
+		ticker.scheduleAtFixedRate(this::onTick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	public void cancel(User player) {
+		Reminder reminder = pending.remove(player.getId());
+		if (reminder != null) {
+			reminder.cancelled = true;
+		}
+	}
+
+	private void deliver(Reminder reminder) {
+		privateChannels.open(reminder.player).thenCompose(c -> {
+			String message = "Hi! It is your turn! ==> " + reminder.channel.getAsMention();
+			return rest.submit(c.getId(), Priority.NOTIFICATION, c.sendMessage(message)).whenComplete((m, e) -> {
+				if (e != null) {
+					privateChannels.invalidate(reminder.player);
+				}
+			});
+		}).whenComplete((m, e) -> {
+			if (e != null) {
+				if (reminder.attempt + 1 < MAX_ATTEMPTS) {
+					Reminder retry = new Reminder(reminder.player, reminder.channel, reminder.dueMillis,
+							reminder.attempt + 1);
+					if (pending.putIfAbsent(reminder.player.getId(), retry) == null) {
+						enqueue(retry, System.currentTimeMillis() + RETRY_MILLIS * retry.attempt);
+					}
+				} else {
+					failedCount.incrementAndGet();
+					System.out.println("Failed to notify " + reminder.player.getEffectiveName() + " - "
+							+ e.getMessage());
+				}
+				return;
+			}
+
+			long lagMillis = System.currentTimeMillis() - reminder.dueMillis;
+			deliveredCount.incrementAndGet();
+			lagMillisTotal.addAndGet(lagMillis);
+			lagMillisMax.accumulate(lagMillis);
+			System.out.println("Notified " + reminder.player.getEffectiveName() + " to take their turn. ("
+					+ lagMillis + " ms late)");
+		});
+	}
+
+	private void enqueue(Reminder reminder, long fireMillis) {
+		reminder.deadlineTick = Math.max(0, (fireMillis - startMillis + TICK_MILLIS - 1) / TICK_MILLIS);
+		incoming.add(reminder);
+	}
+
+	public double getAverageLagMillis() {
+		long count = deliveredCount.get();
+		return count == 0 ? 0 : lagMillisTotal.get() / (double) count;
+	}
+
+	public long getDeliveredCount() {
+		return deliveredCount.get();
+	}
+
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public long getMaxLagMillis() {
+		return lagMillisMax.get();
+	}
+
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	public String getStats() {
+		return String.format("Reminders: %d pending, %d sent, %d failed, lag avg %.0fms max %dms",
+				getPendingCount(), getDeliveredCount(), getFailedCount(), getAverageLagMillis(), getMaxLagMillis());
+	}
+
+	private void onTick() {
+		try {
+			Reminder reminder;
+			while ((reminder = incoming.poll()) != null) {
+				if (!reminder.cancelled) {
+					wheel.add(reminder);
+				}
+			}
+
+			List<Reminder> due = wheel.advance();
+			due.removeIf(r -> !pending.remove(r.player.getId(), r));
+			due.forEach(this::deliver);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void schedule(User player, TextChannel channel, long dueMillis) {
+		Reminder reminder = new Reminder(player, channel, dueMillis, 0);
+		Reminder previous = pending.put(player.getId(), reminder);
+		if (previous != null) {
+			previous.cancelled = true;
+		}
+		enqueue(reminder, dueMillis);
+	}
+
+	public void shutdown() {
+		ticker.shutdownNow();
+	}
+}
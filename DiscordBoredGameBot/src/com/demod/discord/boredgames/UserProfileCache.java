@@ -0,0 +1,86 @@
+package com.demod.discord.boredgames;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+
+/**
+ * Names and avatars of players shown on leaderboards, shared by every game.
+ * Players missing from JDA's cache are fetched once and kept for a while, and
+ * players that can't be found at all are shown under a placeholder name
+ * instead of being left out.
+ */
+public class UserProfileCache {
+
+	public static class Profile {
+		private final String name;
+		private final String avatarUrl;
+
+		public Profile(String name, String avatarUrl) {
+			this.name = name;
+			this.avatarUrl = avatarUrl;
+		}
+
+		/**
+		 * @return null if the player couldn't be found
+		 */
+		public String getAvatarUrl() {
+			return avatarUrl;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	private static final int MAX_PROFILES = Integer.getInteger("boredgames.profileCacheSize", 10000);
+	private static final long EXPIRE_MINUTES = Long.getLong("boredgames.profileExpireMinutes", 60);
+
+	private static final Profile UNKNOWN = new Profile("Unknown Player", null);
+
+	private static Profile profile(User user) {
+		return new Profile(user.getEffectiveName(), user.getEffectiveAvatarUrl());
+	}
+
+	// Key = User ID
+	private final Cache<String, Profile> profiles = CacheBuilder.newBuilder().maximumSize(MAX_PROFILES)
+			.expireAfterWrite(EXPIRE_MINUTES, TimeUnit.MINUTES).recordStats().build();
+
+	public CompletableFuture<Profile> get(JDA jda, PlayerId player) {
+		Profile profile = profiles.getIfPresent(player.getUserId());
+		if (profile != null) {
+			return CompletableFuture.completedFuture(profile);
+		}
+		User user = jda.getUserById(player.getUserId());
+		if (user != null) {
+			profile = profile(user);
+			profiles.put(player.getUserId(), profile);
+			return CompletableFuture.completedFuture(profile);
+		}
+		return jda.retrieveUserById(player.getUserId()).submit().handle((u, e) -> {
+			if (e != null) {
+				// Only remembered if Discord says so, a failed request is tried again next time
+				if (e instanceof ErrorResponseException || e.getCause() instanceof ErrorResponseException) {
+					profiles.put(player.getUserId(), UNKNOWN);
+				}
+				return UNKNOWN;
+			}
+			Profile fetched = profile(u);
+			profiles.put(player.getUserId(), fetched);
+			return fetched;
+		});
+	}
+
+	public String getStats() {
+		CacheStats stats = profiles.stats();
+		return String.format("Profiles: %d cached, %d hits, %d looked up", profiles.size(), stats.hitCount(),
+				stats.missCount());
+	}
+}
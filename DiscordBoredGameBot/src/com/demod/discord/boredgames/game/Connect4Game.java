@@ -3,28 +3,121 @@ package com.demod.discord.boredgames.game;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.demod.discord.boredgames.AnimationPolicy.Animation;
 import com.demod.discord.boredgames.Display;
 import com.demod.discord.boredgames.Emojis;
-import com.demod.discord.boredgames.Game;
-import com.google.common.util.concurrent.Uninterruptibles;
+import com.demod.discord.boredgames.StateGame;
 
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.entities.emoji.Emoji;
 import net.dv8tion.jda.api.entities.emoji.UnicodeEmoji;
 import net.dv8tion.jda.api.interactions.components.buttons.ButtonStyle;
 
-public class Connect4Game extends Game {
+public class Connect4Game extends StateGame {
 	public static enum Tile {
 		NONE, P1, P2, P3, P4
 	}
 
-	private static final int IN_A_ROW = 4;
+	/**
+	 * Builds the board out of emojis, keeping each row's string until one of its
+	 * tiles changes. The emojis are formatted once per player set.
+	 */
+	private class TilesRenderer {
+		private UnicodeEmoji[] playerSet = null;
+		// Index = Tile ordinal
+		private String[] tileEmojis;
+		private final String arrowEmoji = Emojis.SMALL_RED_DOWN_ARROW.getFormatted();
+		private String footerEmojis;
+
+		// Index = Height, as last rendered
+		private Tile[][] rowTiles = new Tile[0][];
+		private String[] rowEmojis = new String[0];
+		private int arrowColumn = -1;
+
+		private String getRow(int height) {
+			boolean changed = rowEmojis[height] == null || (height == rows - 1 && arrowColumn != lastTurnColumn);
+			for (int column = 0; column < columns && !changed; column++) {
+				changed = rowTiles[height][column] != tiles[column][height];
+			}
+			if (changed) {
+				for (int column = 0; column < columns; column++) {
+					rowTiles[height][column] = tiles[column][height];
+				}
+				rowEmojis[height] = renderRow(height, -1, Tile.NONE);
+				if (height == rows - 1) {
+					arrowColumn = lastTurnColumn;
+				}
+			}
+			return rowEmojis[height];
+		}
+
+		/**
+		 * @param overlayTile shown at the overlay position instead of the tile
+		 *                    that is there, without caching the row
+		 */
+		public String render(int overlayColumn, int overlayHeight, Tile overlayTile) {
+			if (playerSet != emojiPlayerSet) {
+				playerSet = emojiPlayerSet;
+				tileEmojis = new String[Tile.values().length];
+				tileEmojis[Tile.NONE.ordinal()] = Emojis.SMALL_BLACK_SQUARE.getFormatted();
+				for (int i = 0; i < playerSet.length; i++) {
+					tileEmojis[i + 1] = playerSet[i].getFormatted();
+				}
+				rowEmojis = new String[0];
+			}
+			if (rowEmojis.length != rows || rowTiles.length == 0 || rowTiles[0].length != columns) {
+				rowTiles = new Tile[rows][columns];
+				rowEmojis = new String[rows];
+				StringBuilder sb = new StringBuilder();
+				for (int column = 0; column < columns; column++) {
+					sb.append(Emojis.BLOCK_NUMBER[column + 1].getFormatted());
+				}
+				footerEmojis = sb.toString();
+			}
+
+			StringBuilder sb = new StringBuilder((rows + 1) * (footerEmojis.length() + 1));
+			for (int height = rows - 1; height >= 0; height--) {
+				sb.append(height == overlayHeight ? renderRow(height, overlayColumn, overlayTile) : getRow(height));
+				sb.append('\n');
+			}
+			sb.append(footerEmojis);
+			return sb.toString();
+		}
+
+		private String renderRow(int height, int overlayColumn, Tile overlayTile) {
+			StringBuilder sb = new StringBuilder(columns * arrowEmoji.length());
+			for (int column = 0; column < columns; column++) {
+				Tile tile = column == overlayColumn ? overlayTile : tiles[column][height];
+				if (tile == Tile.NONE && height == rows - 1 && column == lastTurnColumn) {
+					sb.append(arrowEmoji);
+				} else {
+					sb.append(tileEmojis[tile.ordinal()]);
+				}
+			}
+			return sb.toString();
+		}
+	}
 
-	private boolean hotseat;
+	private static final int IN_A_ROW = 4;
+	private static final long FRAME_MILLIS = 1000;
+
+	private static final String JSONKEY_HOTSEAT = "hotseat";
+	private static final String JSONKEY_EMOJIS = "emojis";
+	private static final String JSONKEY_COLUMNS = "columns";
+	private static final String JSONKEY_ROWS = "rows";
+	private static final String JSONKEY_TILES = "tiles";
+	private static final String JSONKEY_PLAYERS = "players";
+	private static final String JSONKEY_WINNER = "winner";
+	private static final String JSONKEY_LAST_TURN_COLUMN = "last-turn-column";
+	private static final String JSONKEY_LAST_TURN = "last-turn";
+
+	private boolean hotseat = true;
 	private UnicodeEmoji[] emojiPlayerSet;
 	private int columns = 7;
 	private int rows = 6;
@@ -34,6 +127,8 @@ public class Connect4Game extends Game {
 	private int lastTurnColumn = -1;
 	private int lastTurn = -1;
 
+	private final TilesRenderer renderer = new TilesRenderer();
+
 	public Connect4Game() {
 		tiles = new Tile[columns][rows];
 		for (Tile[] column : tiles) {
@@ -43,22 +138,29 @@ public class Connect4Game extends Game {
 		emojiPlayerSet = Emojis.getRandomPlayerSet();
 	}
 
-	private void animateMove(int column, Tile tile) {
-		for (int i = rows - 1; i >= 0; i--) {
-			int height = i;
-			if (tiles[column][height] == Tile.NONE) {
-
-				tiles[column][height] = tile;
-				displayChannel(embed -> {
-					embed.setDescription(generateTilesEmoji());
-				}).ignoreReactions().send();
-				Uninterruptibles.sleepUninterruptibly(1000, TimeUnit.MILLISECONDS);
-				tiles[column][height] = Tile.NONE;
+	private State<?> animateMove(int column, Tile tile) {
+		int landing = 0;
+		while (tiles[column][landing] != Tile.NONE) {
+			landing++;
+		}
+		// Always starts from the top, skipping rows evenly on the way down
+		return animateMove(column, tile, rows - 1, landing, startAnimation(rows - landing, FRAME_MILLIS));
+	}
 
-			} else {
-				break;
-			}
+	private State<?> animateMove(int column, Tile tile, int height, int landing, Animation animation) {
+		if (height < landing || !animation.nextFrame()) {
+			animation.finish();
+			applyMove(column, tile);
+			return runPlayPhase();
 		}
+
+		Display<Void> display = displayChannel(embed -> {
+			embed.setDescription(renderer.render(column, height, tile));
+		});
+
+		return await(display.ignoreReactions(),
+				r -> delay(FRAME_MILLIS,
+						() -> animateMove(column, tile, height - animation.getStep(), landing, animation)));
 	}
 
 	public void applyMove(int column, Tile tile) {
@@ -142,26 +244,7 @@ public class Connect4Game extends Game {
 	}
 
 	private String generateTilesEmoji() {
-		StringBuilder sb = new StringBuilder();
-		for (int height = rows - 1; height >= 0; height--) {
-			for (int column = 0; column < columns; column++) {
-				Tile tile = tiles[column][height];
-				if (tile == Tile.NONE) {
-					if (height == rows - 1 && column == lastTurnColumn) {
-						sb.append(Emojis.SMALL_RED_DOWN_ARROW.getFormatted());
-					} else {
-						sb.append(Emojis.SMALL_BLACK_SQUARE.getFormatted());
-					}
-				} else {
-					sb.append(emojiPlayerSet[tile.ordinal() - 1].getFormatted());
-				}
-			}
-			sb.append('\n');
-		}
-		for (int column = 0; column < columns; column++) {
-			sb.append(Emojis.BLOCK_NUMBER[column + 1].getFormatted());
-		}
-		return sb.toString();
+		return renderer.render(-1, -1, Tile.NONE);
 	}
 
 	@Override
@@ -200,14 +283,39 @@ public class Connect4Game extends Game {
 	}
 
 	@Override
-	public void run() {
-		runHotseatPhase();
-		runPlayPhase();
-		runGameOverPhase();
+	protected void loadSnapshot(JSONObject json) {
+		hotseat = json.getBoolean(JSONKEY_HOTSEAT);
+
+		JSONArray emojisJson = json.getJSONArray(JSONKEY_EMOJIS);
+		emojiPlayerSet = new UnicodeEmoji[emojisJson.length()];
+		for (int i = 0; i < emojiPlayerSet.length; i++) {
+			emojiPlayerSet[i] = Emoji.fromUnicode(emojisJson.getString(i));
+		}
+
+		columns = json.getInt(JSONKEY_COLUMNS);
+		rows = json.getInt(JSONKEY_ROWS);
+		JSONArray tilesJson = json.getJSONArray(JSONKEY_TILES);
+		tiles = new Tile[columns][rows];
+		for (int column = 0; column < columns; column++) {
+			String columnTiles = tilesJson.getString(column);
+			for (int height = 0; height < rows; height++) {
+				tiles[column][height] = Tile.values()[columnTiles.charAt(height) - '0'];
+			}
+		}
+
+		JSONArray playersJson = json.getJSONArray(JSONKEY_PLAYERS);
+		for (int i = 0; i < playersJson.length(); i++) {
+			players.add(retrieveUser(playersJson.getString(i)));
+		}
+
+		winner = json.getInt(JSONKEY_WINNER);
+		lastTurnColumn = json.getInt(JSONKEY_LAST_TURN_COLUMN);
+		lastTurn = json.getInt(JSONKEY_LAST_TURN);
 	}
 
-	private void runGameOverPhase() {
-		displayChannel(embed -> {
+	private State<?> runGameOverPhase() {
+		setPhase("Game Over");
+		return finish(displayChannel(embed -> {
 			boolean mystery = emojiPlayerSet[0].equals(Emojis.QUESTION);
 			if (mystery) {
 				emojiPlayerSet = Emojis.getRandomPlayerSet();
@@ -227,72 +335,111 @@ public class Connect4Game extends Game {
 			embed.setDescription(generateTilesEmoji());
 
 			embed.setFooter("This game has ended.", null);
-		}).send();
+		}));
 	}
 
-	private void runHotseatPhase() {
-		hotseat = true;
-		while (hotseat) {
-			Display<Boolean> display = displayChannel(embed -> {
-				embed.setDescription(
-						"This is a 2-4 player game. Try to create a 4 in a row chain of your player token to win!");
-
-				if (!players.isEmpty()) {
-					embed.addField("Players",
-							IntStream.range(0, players.size())
-									.mapToObj(i -> emojiPlayerSet[i] + " " + players.get(i).getEffectiveName())
-									.collect(Collectors.joining("\n")),
-							true);
-				}
-			});
+	private State<?> runHotseatPhase() {
+		if (!hotseat) {
+			return runPlayPhase();
+		}
+		setPhase("Hotseat");
 
-			if (players.size() < 4) {
-				display.addAction(ButtonStyle.PRIMARY, Emojis.HAND_SPLAYED, "Join", player -> {
-					hotseatNewPlayer(player);
-				});
-			}
-			if (players.size() >= 2) {
-				display.addExclusiveAction(players, ButtonStyle.DANGER, Emojis.GAME_DIE, "Start Game", player -> {
-					hotseat = false;
-				});
+		Display<Void> display = displayChannel(embed -> {
+			embed.setDescription(
+					"This is a 2-4 player game. Try to create a 4 in a row chain of your player token to win!");
+
+			if (!players.isEmpty()) {
+				embed.addField("Players",
+						IntStream.range(0, players.size())
+								.mapToObj(i -> emojiPlayerSet[i] + " " + players.get(i).getEffectiveName())
+								.collect(Collectors.joining("\n")),
+						true);
 			}
+		});
 
-			display.send();
+		if (players.size() < 4) {
+			display.addAction(ButtonStyle.PRIMARY, Emojis.HAND_SPLAYED, "Join", player -> {
+				hotseatNewPlayer(player);
+			});
+		}
+		if (players.size() >= 2) {
+			display.addExclusiveAction(players, ButtonStyle.DANGER, Emojis.GAME_DIE, "Start Game", player -> {
+				hotseat = false;
+			});
 		}
+
+		return await(display, r -> runHotseatPhase());
 	}
 
-	private void runPlayPhase() {
-		while (!isGameOver()) {
-			int turn = (lastTurn + 1) % players.size();
-			User player = players.get(turn);
+	private State<?> runPlayPhase() {
+		if (isGameOver()) {
+			return runGameOverPhase();
+		}
 
-			Display<Integer> display = displayChannel(embed -> {
-				String message = IntStream.range(0, players.size()).mapToObj(i -> emojiPlayerSet[i])
-						.map(Emoji::getFormatted).collect(Collectors.joining())
-						+ "\n"
-						+ IntStream.range(0, players.size())
-								.mapToObj(i -> (turn == i) ? Emojis.ARROW_UP : Emojis.SMALL_BLACK_SQUARE)
-								.map(Emoji::getFormatted).collect(Collectors.joining());
-				embed.addField(player.getEffectiveName() + "'s Turn", message, true);
+		int turn = (lastTurn + 1) % players.size();
+		User player = players.get(turn);
+		setPhase("Turn", player);
 
-				embed.setDescription(generateTilesEmoji());
+		Display<Integer> display = displayChannel(embed -> {
+			String message = IntStream.range(0, players.size()).mapToObj(i -> emojiPlayerSet[i])
+					.map(Emoji::getFormatted).collect(Collectors.joining())
+					+ "\n"
+					+ IntStream.range(0, players.size())
+							.mapToObj(i -> (turn == i) ? Emojis.ARROW_UP : Emojis.SMALL_BLACK_SQUARE)
+							.map(Emoji::getFormatted).collect(Collectors.joining());
+			embed.addField(player.getEffectiveName() + "'s Turn", message, true);
 
-				embed.setFooter("Press the column number to place your piece.", null);
-			});
+			embed.setDescription(generateTilesEmoji());
 
-			for (int i = 0; i < columns; i++) {
-				final int column = i;
-				if (canMove(column)) {
-					display.addExclusiveResult(player, ButtonStyle.SECONDARY, null, Integer.toString(i + 1), column);
-				}
+			embed.setFooter("Press the column number to place your piece.", null);
+		});
+
+		for (int i = 0; i < columns; i++) {
+			final int column = i;
+			if (canMove(column)) {
+				display.addExclusiveResult(player, ButtonStyle.SECONDARY, null, Integer.toString(i + 1), column);
 			}
+		}
 
-			Tile tile = Tile.values()[1 + turn];
-			lastTurnColumn = display.send();
+		Tile tile = Tile.values()[1 + turn];
+		return await(display, column -> {
+			lastTurnColumn = column;
 			lastTurn = turn;
+			return animateMove(column, tile);
+		});
+	}
+
+	@Override
+	protected boolean saveSnapshot(JSONObject json) {
+		json.put(JSONKEY_HOTSEAT, hotseat);
+
+		JSONArray emojisJson = new JSONArray();
+		for (UnicodeEmoji emoji : emojiPlayerSet) {
+			emojisJson.put(emoji.getName());
+		}
+		json.put(JSONKEY_EMOJIS, emojisJson);
 
-			animateMove(lastTurnColumn, tile);
-			applyMove(lastTurnColumn, tile);
+		json.put(JSONKEY_COLUMNS, columns);
+		json.put(JSONKEY_ROWS, rows);
+		JSONArray tilesJson = new JSONArray();
+		for (Tile[] column : tiles) {
+			StringBuilder sb = new StringBuilder();
+			for (Tile tile : column) {
+				sb.append(tile.ordinal());
+			}
+			tilesJson.put(sb.toString());
 		}
+		json.put(JSONKEY_TILES, tilesJson);
+
+		json.put(JSONKEY_PLAYERS, new JSONArray(players.stream().map(User::getId).collect(Collectors.toList())));
+		json.put(JSONKEY_WINNER, winner);
+		json.put(JSONKEY_LAST_TURN_COLUMN, lastTurnColumn);
+		json.put(JSONKEY_LAST_TURN, lastTurn);
+		return true;
+	}
+
+	@Override
+	protected State<?> start() {
+		return runHotseatPhase();
 	}
 }
@@ -7,10 +7,12 @@ import static com.demod.discord.boredgames.game.DominionCard.CardType.Victory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import com.demod.discord.boredgames.Emojis;
@@ -445,23 +447,16 @@ public enum DominionCard {
 				if (p.takeFromSupply(Silver)) {
 					p.putOnDeck(Silver);
 				}
-				for (Player other : p.getOtherPlayers()) {
-					List<DominionCard> victoryCards = other.getHand().stream().filter(c -> c.getType() == Victory)
-							.collect(Collectors.toList());
-					boolean revealHand;
-					if (!victoryCards.isEmpty()) {
-						Optional<DominionCard> card = other.hiddenChooseCardOrSkip(victoryCards,
-								p.getName() + " played Bureaucrat. Reveal a Victory card, or skip it.");
-						if (card.isPresent()) {
-							revealHand = false;
-							p.reveal(card.get(), other.getName() + "'s Victory card is revealed.");
-						} else {
-							revealHand = true;
-						}
+				List<Optional<DominionCard>> cards = p.askOthersAtOnce(other -> other.hiddenChooseCardOrSkipAsync(
+						other.getHand().stream().filter(c -> c.getType() == Victory).collect(Collectors.toList()),
+						p.getName() + " played Bureaucrat. Reveal a Victory card, or skip it."));
+				List<Player> others = p.getOtherPlayers();
+				for (int i = 0; i < others.size(); i++) {
+					Player other = others.get(i);
+					Optional<DominionCard> card = Optional.ofNullable(cards.get(i)).flatMap(c -> c);
+					if (card.isPresent()) {
+						p.reveal(card.get(), other.getName() + "'s Victory card is revealed.");
 					} else {
-						revealHand = true;
-					}
-					if (revealHand) {
 						p.reveal(other.getHand(), other.getName() + "'s hand is revealed.");
 					}
 				}
@@ -469,13 +464,15 @@ public enum DominionCard {
 
 	Militia(Emojis.GUN, 4, Action, Attack, "+2C|Each other player discards down to 3 cards in hand.", p -> {
 		p.addCoins(2);
-		for (Player other : p.getOtherPlayers()) {
-			while (other.getHand().size() > 3) {
-				DominionCard card = other.hiddenChooseCard(other.getHand(),
-						p.getName() + " played Militia. Discard down to 3 cards.");
+		List<List<DominionCard>> discards = p.askOthersAtOnce(other -> chooseDiscardsDownTo(other, other.getHand(), 3,
+				p.getName() + " played Militia. Discard down to 3 cards."));
+		List<Player> others = p.getOtherPlayers();
+		for (int i = 0; i < others.size(); i++) {
+			Player other = others.get(i);
+			Optional.ofNullable(discards.get(i)).orElse(Collections.emptyList()).forEach(card -> {
 				other.removeFromHand(card);
 				other.discard(card);
-			}
+			});
 		}
 	}),//
 
@@ -550,6 +547,29 @@ public enum DominionCard {
 		}
 	}
 
+	/**
+	 * Has the player choose cards to discard one at a time until the rest of
+	 * the hand is down to the hand size. Doesn't block, so several players can
+	 * choose at once, and doesn't touch the player's hand, which is left to the
+	 * game thread.
+	 *
+	 * @return the chosen cards, in the order they were chosen
+	 */
+	private static CompletableFuture<List<DominionCard>> chooseDiscardsDownTo(Player player, List<DominionCard> hand,
+			int handSize, String message) {
+		if (hand.size() <= handSize) {
+			return CompletableFuture.completedFuture(new ArrayList<>());
+		}
+		return player.hiddenChooseCardAsync(hand, message).thenCompose(card -> {
+			List<DominionCard> rest = new ArrayList<>(hand);
+			rest.remove(card);
+			return chooseDiscardsDownTo(player, rest, handSize, message).thenApply(discards -> {
+				discards.add(0, card);
+				return discards;
+			});
+		});
+	}
+
 	private final String title;
 	private final Emoji emoji;
 	private final int cost;
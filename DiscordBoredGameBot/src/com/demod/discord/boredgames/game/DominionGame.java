@@ -13,10 +13,14 @@ import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
-import java.util.function.Consumer;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+
 import com.demod.discord.boredgames.Display;
 import com.demod.discord.boredgames.Emojis;
 import com.demod.discord.boredgames.Game;
@@ -90,6 +94,16 @@ public class DominionGame extends Game {
 			return actionsAvailable > 0 && hand.stream().anyMatch(c -> c.getType() == CardType.Action);
 		}
 
+		/**
+		 * Sends each other player their private prompt at once, and waits until
+		 * all of them have answered.
+		 *
+		 * @return the results, in the order of {@link #getOtherPlayers()}
+		 */
+		public <T> List<T> askOthersAtOnce(Function<Player, CompletableFuture<T>> prompt) {
+			return requestHiddenChoices(getOtherPlayers(), prompt);
+		}
+
 		private boolean canPlayTreasures() {
 			return hand.stream().anyMatch(c -> c.getType() == CardType.Treasure);
 		}
@@ -101,7 +115,8 @@ public class DominionGame extends Game {
 		}
 
 		public DominionCard chooseCard(List<DominionCard> choices, String message) {
-			return requestChooseCard(this, choices, message, false, false).get();
+			// Only empty if the choosing action threw, then the first card is taken
+			return requestChooseCard(this, choices, message, false, false).orElse(choices.get(0));
 		}
 
 		public boolean chooseCardOrSkip(DominionCard card, String message) {
@@ -217,13 +232,23 @@ public class DominionGame extends Game {
 		}
 
 		public DominionCard hiddenChooseCard(List<DominionCard> choices, String message) {
-			return requestChooseCard(this, choices, message, false, true).get();
+			// Only empty if the choosing action threw, then the first card is taken
+			return requestChooseCard(this, choices, message, false, true).orElse(choices.get(0));
+		}
+
+		public CompletableFuture<DominionCard> hiddenChooseCardAsync(List<DominionCard> choices, String message) {
+			return requestHiddenChoice(this, choices, message, false).thenApply(Optional::get);
 		}
 
 		public Optional<DominionCard> hiddenChooseCardOrSkip(List<DominionCard> choices, String message) {
 			return requestChooseCard(this, choices, message, true, true);
 		}
 
+		public CompletableFuture<Optional<DominionCard>> hiddenChooseCardOrSkipAsync(List<DominionCard> choices,
+				String message) {
+			return requestHiddenChoice(this, choices, message, true);
+		}
+
 		public void initializeGame() {
 			deck.clear();
 			discard.clear();
@@ -329,6 +354,43 @@ public class DominionGame extends Game {
 
 	}
 
+	private enum Stage {
+		HOTSEAT, TURN, ACTION, TREASURE, BUY
+	}
+
+	private static final String JSONKEY_STAGE = "stage";
+	private static final String JSONKEY_KINGDOMS = "kingdoms";
+	private static final String JSONKEY_PLAYERS = "players";
+	private static final String JSONKEY_TURN = "turn";
+	private static final String JSONKEY_SUPPLY = "supply";
+	private static final String JSONKEY_INITIAL_SUPPLY_COUNT = "initial-supply-count";
+	private static final String JSONKEY_TRASH = "trash";
+	private static final String JSONKEY_USER = "user";
+	private static final String JSONKEY_DECK = "deck";
+	private static final String JSONKEY_DISCARD = "discard";
+	private static final String JSONKEY_HAND = "hand";
+	private static final String JSONKEY_PLAY = "play";
+	private static final String JSONKEY_ACTIONS = "actions";
+	private static final String JSONKEY_BUYS = "buys";
+	private static final String JSONKEY_COINS = "coins";
+	private static final String JSONKEY_CARD = "card";
+	private static final String JSONKEY_COUNT = "count";
+
+	private static JSONArray cardsToJson(Collection<DominionCard> cards) {
+		return new JSONArray(cards.stream().map(DominionCard::name).collect(Collectors.toList()));
+	}
+
+	private static void loadCards(Collection<DominionCard> cards, JSONArray json) {
+		cards.clear();
+		for (int i = 0; i < json.length(); i++) {
+			cards.add(DominionCard.valueOf(json.getString(i)));
+		}
+	}
+
+	private Stage stage = Stage.HOTSEAT;
+	// Only set while the game waits on a phase display, the one place it can be resumed from
+	private volatile boolean atPhaseDisplay = false;
+
 	private boolean hotseat;
 	private final List<Player> players = new ArrayList<>();
 	private final Set<DominionCard> kingdoms = new LinkedHashSet<>();
@@ -488,6 +550,36 @@ public class DominionGame extends Game {
 		return winner.isPresent();
 	}
 
+	@Override
+	protected void loadSnapshot(JSONObject json) {
+		stage = Stage.valueOf(json.getString(JSONKEY_STAGE));
+		loadCards(kingdoms, json.getJSONArray(JSONKEY_KINGDOMS));
+
+		JSONArray playersJson = json.getJSONArray(JSONKEY_PLAYERS);
+		for (int i = 0; i < playersJson.length(); i++) {
+			JSONObject playerJson = playersJson.getJSONObject(i);
+			Player player = new Player(retrieveUser(playerJson.getString(JSONKEY_USER)));
+			loadCards(player.deck, playerJson.getJSONArray(JSONKEY_DECK));
+			loadCards(player.discard, playerJson.getJSONArray(JSONKEY_DISCARD));
+			loadCards(player.hand, playerJson.getJSONArray(JSONKEY_HAND));
+			loadCards(player.play, playerJson.getJSONArray(JSONKEY_PLAY));
+			player.actionsAvailable = playerJson.getInt(JSONKEY_ACTIONS);
+			player.buysAvailable = playerJson.getInt(JSONKEY_BUYS);
+			player.coinsAvailable = playerJson.getInt(JSONKEY_COINS);
+			players.add(player);
+		}
+
+		turn = json.getInt(JSONKEY_TURN);
+		supply.clear();
+		JSONArray supplyJson = json.getJSONArray(JSONKEY_SUPPLY);
+		for (int i = 0; i < supplyJson.length(); i++) {
+			JSONObject entryJson = supplyJson.getJSONObject(i);
+			supply.add(DominionCard.valueOf(entryJson.getString(JSONKEY_CARD)), entryJson.getInt(JSONKEY_COUNT));
+		}
+		initialSupplyCount = json.getInt(JSONKEY_INITIAL_SUPPLY_COUNT);
+		loadCards(trash, json.getJSONArray(JSONKEY_TRASH));
+	}
+
 	private void pickKingdoms() {
 		kingdoms.clear();
 		Random rand = new Random();
@@ -507,12 +599,14 @@ public class DominionGame extends Game {
 		player.play(card);
 	}
 
-	private void registerCardChoices(Display<?> display, Player player, LinkedHashSet<DominionCard> playActionChoices,
-			Consumer<DominionCard> action) {
-		for (DominionCard card : playActionChoices) {
-			display.addExclusiveAction(player.getUser(), ButtonStyle.SECONDARY, card.getEmoji(), card.getTitle(),
-					p -> action.accept(card));
+	private void registerCardChoices(Display<Optional<DominionCard>> display, Player player,
+			LinkedHashSet<DominionCard> choices) {
+		for (DominionCard card : choices) {
+			display.addExclusiveResult(player.getUser(), ButtonStyle.SECONDARY, card.getEmoji(), card.getTitle(),
+					Optional.of(card));
 		}
+		display.addExclusiveResult(player.getUser(), ButtonStyle.SECONDARY, Emojis.TRACK_NEXT, "Skip",
+				Optional.empty());
 	}
 
 	private <T> Optional<T> requestAction(Player player, List<ActionOption<T>> actionOptions, String message,
@@ -558,49 +652,99 @@ public class DominionGame extends Game {
 			}
 		}
 
+		// A prompt whose deciding action threw comes back null, which counts as no choice
 		if (hidden) {
-			displayChannel(embed -> {
-				embed.setDescription("Sent **" + player.getUser().getEffectiveName()
-						+ "** a private message.  Waiting for a response...");
-			}).send();
+			return Optional.ofNullable(requestHiddenChoices(ImmutableList.of(player),
+					p -> requestHiddenChoice(p, choices, message, skippable)).get(0)).flatMap(c -> c);
 		}
 
-		Display<Optional<DominionCard>> display = hidden ? displayPrivate(player.getUser()) : displayChannel();
+		Display<Optional<DominionCard>> display = displayChannel();
 		EmbedBuilder embed = display.getBuilder();
-		if (!hidden) {
-			embed.addField("Choosing Player", generatePlayerStats(player, false), true);
-		}
+		embed.addField("Choosing Player", generatePlayerStats(player, false), true);
 		embed.addField("Card Choices", generateDisplayCardList(choices), true);
 		embed.setDescription(message);
 
 		for (DominionCard card : uniqueChoices) {
 			embed.addField(card.getEmoji() + " Choose " + card.getTitle(), card.getText(), true);
-			if (hidden) {
-				display.addResult(ButtonStyle.SECONDARY, card.getEmoji(), card.getTitle(), Optional.of(card));
-			} else {
-				display.addExclusiveResult(player.getUser(), ButtonStyle.SECONDARY, card.getEmoji(), card.getTitle(),
-						Optional.of(card));
-			}
+			display.addExclusiveResult(player.getUser(), ButtonStyle.SECONDARY, card.getEmoji(), card.getTitle(),
+					Optional.of(card));
 		}
 
 		if (skippable) {
-			if (hidden) {
-				display.addResult(ButtonStyle.SECONDARY, Emojis.TRACK_NEXT, "Skip", Optional.empty());
-			} else {
-				display.addExclusiveResult(player.getUser(), ButtonStyle.SECONDARY, Emojis.TRACK_NEXT, "Skip",
-						Optional.empty());
-			}
+			display.addExclusiveResult(player.getUser(), ButtonStyle.SECONDARY, Emojis.TRACK_NEXT, "Skip",
+					Optional.empty());
 		}
 
-		Optional<DominionCard> result = display.send();
+		return Optional.ofNullable(display.send()).flatMap(c -> c);
+	}
 
-		if (hidden) {
-			displayPrivate(player.getUser(), e -> {
-				e.setDescription("Your response has been submitted.");
+	/**
+	 * Sends the player a private prompt without waiting for it, or for their
+	 * channel to open. Once they have answered, they are told so before the
+	 * result completes. The choices are copied, so the caller's list can change
+	 * in the meantime.
+	 */
+	private CompletableFuture<Optional<DominionCard>> requestHiddenChoice(Player player, List<DominionCard> choices,
+			String message, boolean skippable) {
+		List<DominionCard> choicesCopy = ImmutableList.copyOf(choices);
+		List<DominionCard> uniqueChoices = choicesCopy.stream().distinct().collect(Collectors.toList());
+		if (skippable) {
+			if (choicesCopy.isEmpty()) {
+				return CompletableFuture.completedFuture(Optional.empty());
+			}
+		} else {
+			if (uniqueChoices.size() == 1) {
+				return CompletableFuture.completedFuture(Optional.of(choicesCopy.get(0)));
+			}
+		}
+
+		return this.<Optional<DominionCard>>displayPrivateAsync(player.getUser(), embed -> {
+			embed.addField("Card Choices", generateDisplayCardList(choicesCopy), true);
+			embed.setDescription(message);
+			for (DominionCard card : uniqueChoices) {
+				embed.addField(card.getEmoji() + " Choose " + card.getTitle(), card.getText(), true);
+			}
+		}).thenCompose(display -> {
+			for (DominionCard card : uniqueChoices) {
+				display.addResult(ButtonStyle.SECONDARY, card.getEmoji(), card.getTitle(), Optional.of(card));
+			}
+			if (skippable) {
+				display.addResult(ButtonStyle.SECONDARY, Emojis.TRACK_NEXT, "Skip", Optional.empty());
+			}
+			return display.sendAsync();
+		}).thenCompose(result -> displayPrivateAsync(player.getUser(), e -> {
+			e.setDescription("Your response has been submitted.");
+		}).thenCompose(Display::sendAsync).thenApply(v -> result));
+	}
+
+	/**
+	 * Starts every player's private prompt at once, tells the channel who it is
+	 * waiting on, and waits for all of them.
+	 *
+	 * @return the results, in the order of the players
+	 */
+	private <T> List<T> requestHiddenChoices(List<Player> players, Function<Player, CompletableFuture<T>> prompt) {
+		List<CompletableFuture<T>> results = players.stream().map(prompt).collect(Collectors.toList());
+
+		List<String> waitingNames = new ArrayList<>();
+		for (int i = 0; i < players.size(); i++) {
+			if (!results.get(i).isDone()) {
+				waitingNames.add("**" + players.get(i).getUser().getEffectiveName() + "**");
+			}
+		}
+		if (waitingNames.size() == 1) {
+			displayChannel(embed -> {
+				embed.setDescription("Sent " + waitingNames.get(0) + " a private message.  Waiting for a response...");
+			}).send();
+		} else if (waitingNames.size() > 1) {
+			displayChannel(embed -> {
+				embed.setDescription("Sent " + String.join(", ", waitingNames.subList(0, waitingNames.size() - 1))
+						+ " and " + waitingNames.get(waitingNames.size() - 1)
+						+ " private messages.  Waiting for their responses...");
 			}).send();
 		}
 
-		return result;
+		return awaitAll(results);
 	}
 
 	private void requestReveal(Player player, List<DominionCard> cards, String message) {
@@ -614,25 +758,36 @@ public class DominionGame extends Game {
 
 	@Override
 	public void run() {
-		runHotseatPhase();
+		if (stage == Stage.HOTSEAT) {
+			runHotseatPhase();
+		}
 		while (!isGameOver()) {
 			Player player = currentPlayer();
-			startTurn(player);
-			runPlayActionsPhase(player);
-			runPlayTreasuresPhase(player);
+			if (stage == Stage.TURN) {
+				startTurn(player);
+			}
+			if (stage.compareTo(Stage.ACTION) <= 0) {
+				runPlayActionsPhase(player);
+			}
+			if (stage.compareTo(Stage.TREASURE) <= 0) {
+				runPlayTreasuresPhase(player);
+			}
 			runBuyPhase(player);
 			endTurn(player);
 			checkGameOver();
 			turn = (turn + 1) % players.size();
+			stage = Stage.TURN;
 		}
 		runGameOverPhase();
 	}
 
 	private void runBuyPhase(Player player) {
+		setPhase("Buy Phase", player.getUser());
+		stage = Stage.BUY;
 		player.skipPhase = false;
 
 		while (player.canBuyCards() && !player.skipPhase) {
-			Display<?> display = displayChannel(embed -> {
+			Display<Optional<DominionCard>> display = displayChannel(embed -> {
 				embed.setTitle("Buy Phase - Buy any Supply Cards");
 				embed.setDescription(
 						"Buy cards from the supply if you choose to do so.\n\nPress the corresponding reaction to play that card, or skip the buy phase by pressing "
@@ -650,16 +805,19 @@ public class DominionGame extends Game {
 				}
 			});
 
-			registerCardChoices(display, player, getBuyChoices(player), c -> buyChooseCard(player, c));
-			display.addExclusiveAction(player.getUser(), ButtonStyle.SECONDARY, Emojis.TRACK_NEXT, "Skip", p -> {
-				player.skipPhase = true;
-			});
+			registerCardChoices(display, player, getBuyChoices(player));
 
-			display.send();
+			Optional<DominionCard> card = sendPhaseDisplay(display);
+			if (card.isPresent()) {
+				buyChooseCard(player, card.get());
+			} else {
+				player.skipPhase = true;
+			}
 		}
 	}
 
 	private void runGameOverPhase() {
+		setPhase("Game Over");
 		displayChannel(embed -> {
 			embed.setDescription("Game Over! The winner is **" + winner.get().getName() + "**!");
 
@@ -671,6 +829,7 @@ public class DominionGame extends Game {
 	}
 
 	private void runHotseatPhase() {
+		setPhase("Hotseat");
 		hotseat = true;
 		while (hotseat) {
 			List<User> playerMembers = players.stream().map(Player::getUser).collect(Collectors.toList());
@@ -709,18 +868,21 @@ public class DominionGame extends Game {
 				});
 			}
 
-			display.send();
+			sendPhaseDisplay(display);
 		}
 
 		initializeGame();
 		turn = 0;
+		stage = Stage.TURN;
 	}
 
 	private void runPlayActionsPhase(Player player) {
+		setPhase("Action Phase", player.getUser());
+		stage = Stage.ACTION;
 		player.skipPhase = false;
 
 		while (player.canPlayActions() && !player.skipPhase) {
-			Display<?> display = displayChannel(embed -> {
+			Display<Optional<DominionCard>> display = displayChannel(embed -> {
 				embed.setTitle("Action Phase - Play any Action Cards");
 				embed.setDescription(
 						"Play action cards if you choose to do so.\n\nPress the corresponding reaction to play that card, or skip the action phase by pressing "
@@ -735,21 +897,25 @@ public class DominionGame extends Game {
 				}
 			});
 
-			registerCardChoices(display, player, getPlayActionChoices(player), c -> playActionsChooseCard(player, c));
-			display.addExclusiveAction(player.getUser(), ButtonStyle.SECONDARY, Emojis.TRACK_NEXT, "Skip", p -> {
-				player.skipPhase = true;
-			});
+			registerCardChoices(display, player, getPlayActionChoices(player));
 
-			display.send();
+			Optional<DominionCard> card = sendPhaseDisplay(display);
+			if (card.isPresent()) {
+				playActionsChooseCard(player, card.get());
+			} else {
+				player.skipPhase = true;
+			}
 		}
 	}
 
 	private void runPlayTreasuresPhase(Player player) {
+		setPhase("Treasure Phase", player.getUser());
+		stage = Stage.TREASURE;
 		player.skipPhase = false;
 		autoPlayTreasures(player);
 
 		while (player.canPlayTreasures() && !player.skipPhase) {
-			Display<?> display = displayChannel(embed -> {
+			Display<Optional<DominionCard>> display = displayChannel(embed -> {
 				embed.setTitle("Treasure Phase - Play any Treasure Cards");
 				embed.setDescription(
 						"Play treasure cards if you choose to do so.\n\nPress the corresponding reaction to play that card, or skip the treasure phase by pressing "
@@ -764,13 +930,61 @@ public class DominionGame extends Game {
 				}
 			});
 
-			registerCardChoices(display, player, getPlayTreasureChoices(player),
-					c -> playTreasuresChooseCard(player, c));
-			display.addExclusiveAction(player.getUser(), ButtonStyle.SECONDARY, Emojis.TRACK_NEXT, "Skip", p -> {
+			registerCardChoices(display, player, getPlayTreasureChoices(player));
+
+			Optional<DominionCard> card = sendPhaseDisplay(display);
+			if (card.isPresent()) {
+				playTreasuresChooseCard(player, card.get());
+			} else {
 				player.skipPhase = true;
-			});
+			}
+		}
+	}
 
-			display.send();
+	@Override
+	protected boolean saveSnapshot(JSONObject json) {
+		if (!atPhaseDisplay || players.stream().anyMatch(p -> !p.firstPlayConditions.isEmpty())) {
+			return false;
+		}
+
+		json.put(JSONKEY_STAGE, stage.name());
+		json.put(JSONKEY_KINGDOMS, cardsToJson(kingdoms));
+
+		JSONArray playersJson = new JSONArray();
+		for (Player player : players) {
+			JSONObject playerJson = new JSONObject();
+			playerJson.put(JSONKEY_USER, player.getUser().getId());
+			playerJson.put(JSONKEY_DECK, cardsToJson(player.deck));
+			playerJson.put(JSONKEY_DISCARD, cardsToJson(player.discard));
+			playerJson.put(JSONKEY_HAND, cardsToJson(player.hand));
+			playerJson.put(JSONKEY_PLAY, cardsToJson(player.play));
+			playerJson.put(JSONKEY_ACTIONS, player.actionsAvailable);
+			playerJson.put(JSONKEY_BUYS, player.buysAvailable);
+			playerJson.put(JSONKEY_COINS, player.coinsAvailable);
+			playersJson.put(playerJson);
+		}
+		json.put(JSONKEY_PLAYERS, playersJson);
+
+		json.put(JSONKEY_TURN, turn);
+		JSONArray supplyJson = new JSONArray();
+		for (Multiset.Entry<DominionCard> entry : supply.entrySet()) {
+			JSONObject entryJson = new JSONObject();
+			entryJson.put(JSONKEY_CARD, entry.getElement().name());
+			entryJson.put(JSONKEY_COUNT, entry.getCount());
+			supplyJson.put(entryJson);
+		}
+		json.put(JSONKEY_SUPPLY, supplyJson);
+		json.put(JSONKEY_INITIAL_SUPPLY_COUNT, initialSupplyCount);
+		json.put(JSONKEY_TRASH, cardsToJson(trash));
+		return true;
+	}
+
+	private <T> T sendPhaseDisplay(Display<T> display) {
+		atPhaseDisplay = true;
+		try {
+			return display.send();
+		} finally {
+			atPhaseDisplay = false;
 		}
 	}
 
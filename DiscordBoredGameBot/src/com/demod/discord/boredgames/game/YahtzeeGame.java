@@ -1,6 +1,5 @@
 package com.demod.discord.boredgames.game;
 
-import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map.Entry;
@@ -12,11 +11,16 @@ import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import com.demod.discord.boredgames.Display;
 import com.demod.discord.boredgames.Emojis;
 import com.demod.discord.boredgames.Game;
+import com.demod.discord.boredgames.Leaderboard;
+import com.demod.discord.boredgames.Leaderboard.Row;
+import com.demod.discord.boredgames.PlayerId;
+import com.demod.discord.boredgames.UserProfileCache.Profile;
 import com.google.common.primitives.Booleans;
 
 import net.dv8tion.jda.api.entities.User;
@@ -50,8 +54,27 @@ public class YahtzeeGame extends Game {
 		}
 	}
 
-	private static final String JSONKEY_PLAYCOUNT = "play-count";
-	private static final String JSONKEY_BESTSCORE = "best-score";
+	private enum Stage {
+		HOTSEAT, TURN, ROLLING, CHOOSING
+	}
+
+	public static final int LEADERBOARD_SIZE = 10;
+	// Every category at its best, the upper bonus and a bonus for each of
+	// 12 more Yahtzees
+	public static final int MAX_SCORE = 1575;
+
+	public static final String JSONKEY_PLAYCOUNT = "play-count";
+	public static final String JSONKEY_BESTSCORE = "best-score";
+
+	private static final String JSONKEY_STAGE = "stage";
+	private static final String JSONKEY_PLAYER = "player";
+	private static final String JSONKEY_CATEGORY_POINTS = "category-points";
+	private static final String JSONKEY_CATEGORY_SCORED = "category-scored";
+	private static final String JSONKEY_UPPER_BONUS = "upper-bonus";
+	private static final String JSONKEY_YAHTZEE_BONUS = "yahtzee-bonus";
+	private static final String JSONKEY_ROLLED_DICE = "rolled-dice";
+	private static final String JSONKEY_LOCKED_DICE = "locked-dice";
+	private static final String JSONKEY_ROLL_COUNT = "roll-count";
 
 	private static final SortedMap<Integer, String> gameOverPhrases = new TreeMap<>();
 	static {
@@ -69,6 +92,36 @@ public class YahtzeeGame extends Game {
 		gameOverPhrases.put(1000, "YOU ARE A YAHTZEE GOD!");
 	}
 
+	/**
+	 * @param profiles the names of the players in the rows, in the same order
+	 */
+	public static String generateDisplayLeaderboard(List<Row> rows, List<Profile> profiles) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < rows.size(); i++) {
+			if (i > 0) {
+				sb.append('\n');
+			}
+			if (i == LEADERBOARD_SIZE) {
+				sb.append("...\n");
+			}
+			Row row = rows.get(i);
+			sb.append("#" + row.getRank() + " " + profiles.get(i).getName() + " (" + row.getScore() + " points)");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param player shown below the top players if they aren't one of them
+	 */
+	public static List<Row> getDisplayLeaderboardRows(Leaderboard leaderboard, Optional<PlayerId> player) {
+		List<Row> rows = leaderboard.getTop(LEADERBOARD_SIZE);
+		player.flatMap(leaderboard::find)
+				.filter(r -> rows.stream().noneMatch(t -> t.getPlayer().equals(r.getPlayer())))
+				.ifPresent(rows::add);
+		return rows;
+	}
+
+	private Stage stage = Stage.HOTSEAT;
 	private User player = null;
 	private final int[] categoryPoints;
 	private final boolean[] categoryScored;
@@ -182,21 +235,11 @@ public class YahtzeeGame extends Game {
 		return sb.toString();
 	}
 
-	private String generateDisplayLeaderboard() {
-		List<Entry<User, Integer>> leaderboard = getSaves().entrySet().stream()
-				.map(e -> new SimpleImmutableEntry<>(e.getKey(), e.getValue().optInt(JSONKEY_BESTSCORE, 0)))
-				.sorted((p1, p2) -> Integer.compare(p2.getValue(), p1.getValue())).limit(10)
-				.collect(Collectors.toList());
-
-		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < leaderboard.size(); i++) {
-			if (i > 0) {
-				sb.append('\n');
-			}
-			Entry<User, Integer> pair = leaderboard.get(i);
-			sb.append("#" + (i + 1) + " " + pair.getKey().getEffectiveName() + " (" + pair.getValue() + " points)");
-		}
-		return sb.toString();
+	private String generateDisplayLeaderboard(Optional<User> player) {
+		List<Row> rows = getDisplayLeaderboardRows(getLeaderboard(JSONKEY_BESTSCORE, MAX_SCORE),
+				player.map(PlayerId::of));
+		return generateDisplayLeaderboard(rows,
+				getProfiles(rows.stream().map(Row::getPlayer).collect(Collectors.toList())));
 	}
 
 	private String generateDisplayRolledDice(boolean showLocks) {
@@ -362,6 +405,29 @@ public class YahtzeeGame extends Game {
 		return true;
 	}
 
+	@Override
+	protected void loadSnapshot(JSONObject json) {
+		stage = Stage.valueOf(json.getString(JSONKEY_STAGE));
+		if (json.has(JSONKEY_PLAYER)) {
+			player = retrieveUser(json.getString(JSONKEY_PLAYER));
+		}
+		JSONArray pointsJson = json.getJSONArray(JSONKEY_CATEGORY_POINTS);
+		JSONArray scoredJson = json.getJSONArray(JSONKEY_CATEGORY_SCORED);
+		for (int i = 0; i < categoryPoints.length; i++) {
+			categoryPoints[i] = pointsJson.getInt(i);
+			categoryScored[i] = scoredJson.getBoolean(i);
+		}
+		upperBonusPoints = json.getInt(JSONKEY_UPPER_BONUS);
+		yahtzeeBonusPoints = json.getInt(JSONKEY_YAHTZEE_BONUS);
+		JSONArray rolledJson = json.getJSONArray(JSONKEY_ROLLED_DICE);
+		JSONArray lockedJson = json.getJSONArray(JSONKEY_LOCKED_DICE);
+		for (int i = 0; i < rolledDice.length; i++) {
+			rolledDice[i] = rolledJson.getInt(i);
+			lockedDice[i] = lockedJson.getBoolean(i);
+		}
+		rollCount = json.getInt(JSONKEY_ROLL_COUNT);
+	}
+
 	private void rollDice() {
 		for (int i = 0; i < rolledDice.length; i++) {
 			if (!lockedDice[i]) {
@@ -374,21 +440,26 @@ public class YahtzeeGame extends Game {
 
 	@Override
 	public void run() {
-		runHotseatPhase();
+		if (stage == Stage.HOTSEAT) {
+			runHotseatPhase();
+		}
 		while (!isGameOver()) {
-			runRollingPhase();
+			if (stage != Stage.CHOOSING) {
+				runRollingPhase();
+			}
 			runChoosingPhase();
 		}
 		runGameOverPhase();
 	}
 
 	private void runChoosingPhase() {
+		setPhase("Choosing");
 		int[] gainPoints = generateGainPoints();
 		int[] bonusPoints = generateBonusPoints();
 		Function<Integer, ButtonStyle> style = i -> bonusPoints[i] > 0 ? ButtonStyle.SUCCESS
 				: gainPoints[i] > 0 ? ButtonStyle.PRIMARY : ButtonStyle.SECONDARY;
 
-		Display<?> display = displayChannel(embed -> {
+		Display<Category> display = displayChannel(embed -> {
 			embed.setAuthor(player.getEffectiveName(), null, player.getEffectiveAvatarUrl());
 			embed.addField("Score Card", generateDisplayScoreCard(), true);
 			embed.addField("Choose Scoring", generateDisplayChoices(gainPoints, bonusPoints), true);
@@ -399,16 +470,15 @@ public class YahtzeeGame extends Game {
 		if (checkJoker()) {// Forced Joker Rules
 			if (!checkJokerUpperScored()) {
 				Category category = Category.values()[rolledDice[0] - 1];
-				display.addExclusiveAction(player, style.apply(category.ordinal()), category.emoji, category.label,
-						p -> chooseCategory(category));
+				display.addExclusiveResult(player, style.apply(category.ordinal()), category.emoji, category.label,
+						category);
 			} else if (checkLowerAvailable()) {
 				for (int i = 6; i < categoryPoints.length; i++) {
 					final Category category = Category.values()[i];
 					if (categoryScored[i]) {
 						continue;
 					}
-					display.addExclusiveAction(player, style.apply(i), category.emoji, category.label,
-							p -> chooseCategory(category));
+					display.addExclusiveResult(player, style.apply(i), category.emoji, category.label, category);
 				}
 			} else {
 				for (int i = 0; i < 6; i++) {
@@ -416,8 +486,7 @@ public class YahtzeeGame extends Game {
 					if (categoryScored[i]) {
 						continue;
 					}
-					display.addExclusiveAction(player, style.apply(i), category.emoji, category.label,
-							p -> chooseCategory(category));
+					display.addExclusiveResult(player, style.apply(i), category.emoji, category.label, category);
 				}
 			}
 		} else {
@@ -426,41 +495,48 @@ public class YahtzeeGame extends Game {
 				if (categoryScored[i]) {
 					continue;
 				}
-				display.addExclusiveAction(player, style.apply(i), category.emoji, category.label,
-						p -> chooseCategory(category));
+				display.addExclusiveResult(player, style.apply(i), category.emoji, category.label, category);
 			}
 		}
 
-		display.send();
+		chooseCategory(display.send());
+		stage = Stage.TURN;
 	}
 
 	private void runGameOverPhase() {
+		setPhase("Game Over");
 		savePlayerScore();
 
 		displayChannel(embed -> {
 			embed.setAuthor(player.getEffectiveName(), null, player.getEffectiveAvatarUrl());
 			embed.addField("Score Card", generateDisplayScoreCard(), true);
-			embed.addField("Leaderboard", generateDisplayLeaderboard(), true);
+			embed.addField("Leaderboard", generateDisplayLeaderboard(Optional.of(player)), true);
 			embed.setFooter("Game over! " + getGameOverMessage(), null);
 		}).send();
 	}
 
 	private void runHotseatPhase() {
+		setPhase("Hotseat");
 		displayChannel(embed -> {
 			embed.setDescription(
 					"This is a singleplayer game. Press the " + Emojis.GAME_DIE.getFormatted() + " to start!");
-			embed.addField("Leaderboard", generateDisplayLeaderboard(), true);
+			embed.addField("Leaderboard", generateDisplayLeaderboard(Optional.empty()), true);
 
 		}).addAction(ButtonStyle.SUCCESS, Emojis.GAME_DIE, "Roll", p -> {
 			this.player = p;
 
 		}).send();
+		stage = Stage.TURN;
 	}
 
 	private void runRollingPhase() {
-		rollCount = 0;
-		Arrays.fill(lockedDice, false);
-		rollDice();
+		setPhase("Rolling");
+		if (stage != Stage.ROLLING) {
+			rollCount = 0;
+			Arrays.fill(lockedDice, false);
+			rollDice();
+			stage = Stage.ROLLING;
+		}
 
 		while (rollCount < 3) {
 			Display<?> display = displayChannel(embed -> {
@@ -491,6 +567,7 @@ public class YahtzeeGame extends Game {
 			display.addExclusiveAction(player, ButtonStyle.PRIMARY, Emojis.GAME_DIE, "Roll", p -> rollDice());
 			display.send();
 		}
+		stage = Stage.CHOOSING;
 	}
 
 	private void savePlayerScore() {
@@ -500,6 +577,45 @@ public class YahtzeeGame extends Game {
 		playerSave.put(JSONKEY_PLAYCOUNT, playerSave.optInt(JSONKEY_PLAYCOUNT, 0) + 1);
 		System.out.println(playerSave.toString(2));
 		setSave(player, Optional.of(playerSave));
+
+		// A player's best score from before the global leaderboard joins it on their next game
+		int bestScore = playerSave.getInt(JSONKEY_BESTSCORE);
+		updateGlobalSave(player, globalSave -> {
+			globalSave.put(JSONKEY_BESTSCORE, Math.max(bestScore, globalSave.optInt(JSONKEY_BESTSCORE, 0)));
+			globalSave.put(JSONKEY_PLAYCOUNT, globalSave.optInt(JSONKEY_PLAYCOUNT, 0) + 1);
+			return globalSave;
+		});
+	}
+
+	@Override
+	protected boolean saveSnapshot(JSONObject json) {
+		if (isGameOver()) {
+			return false;
+		}
+		json.put(JSONKEY_STAGE, stage.name());
+		if (player != null) {
+			json.put(JSONKEY_PLAYER, player.getId());
+		}
+		JSONArray pointsJson = new JSONArray();
+		JSONArray scoredJson = new JSONArray();
+		for (int i = 0; i < categoryPoints.length; i++) {
+			pointsJson.put(categoryPoints[i]);
+			scoredJson.put(categoryScored[i]);
+		}
+		json.put(JSONKEY_CATEGORY_POINTS, pointsJson);
+		json.put(JSONKEY_CATEGORY_SCORED, scoredJson);
+		json.put(JSONKEY_UPPER_BONUS, upperBonusPoints);
+		json.put(JSONKEY_YAHTZEE_BONUS, yahtzeeBonusPoints);
+		JSONArray rolledJson = new JSONArray();
+		JSONArray lockedJson = new JSONArray();
+		for (int i = 0; i < rolledDice.length; i++) {
+			rolledJson.put(rolledDice[i]);
+			lockedJson.put(lockedDice[i]);
+		}
+		json.put(JSONKEY_ROLLED_DICE, rolledJson);
+		json.put(JSONKEY_LOCKED_DICE, lockedJson);
+		json.put(JSONKEY_ROLL_COUNT, rollCount);
+		return true;
 	}
 
 	private void toggleLockDice(int dice) {
@@ -0,0 +1,53 @@
+package com.demod.discord.boredgames;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+class ActionIdTest {
+
+	@Test
+	void parsesWhatItFormats() {
+		String displayKey = ActionId.displayKey(123456, 9876543210L);
+		Optional<ActionId> actionId = ActionId.parse(ActionId.format(displayKey, 37));
+		assertTrue(actionId.isPresent());
+		assertEquals(displayKey, actionId.get().getDisplayKey());
+		assertEquals(123456, actionId.get().getGameId());
+		assertEquals(37, actionId.get().getIndex());
+	}
+
+	@Test
+	void keepsDisplaysApart() {
+		String first = ActionId.displayKey(1, 1);
+		String second = ActionId.displayKey(1, 2);
+		assertFalse(first.equals(second));
+		assertEquals(second, ActionId.parse(ActionId.format(second, 0)).get().getDisplayKey());
+	}
+
+	@Test
+	void fitsInACustomId() {
+		String componentId = ActionId.format(ActionId.displayKey(Integer.MAX_VALUE, Long.MAX_VALUE), 24);
+		assertTrue(componentId.length() <= 100);
+	}
+
+	@Test
+	void rejectsIdsFromEarlierRuns() {
+		String componentId = ActionId.format(ActionId.displayKey(5, 7), 2);
+		String earlier = "0" + componentId.substring(componentId.indexOf('.'));
+		assertFalse(ActionId.parse(earlier).isPresent());
+	}
+
+	@Test
+	void rejectsMalformedIds() {
+		String displayKey = ActionId.displayKey(5, 7);
+		assertFalse(ActionId.parse("").isPresent());
+		assertFalse(ActionId.parse("legacy-button").isPresent());
+		assertFalse(ActionId.parse(displayKey).isPresent());
+		assertFalse(ActionId.parse(displayKey + ".!").isPresent());
+		assertFalse(ActionId.parse(ActionId.format(displayKey, 1) + ".2").isPresent());
+	}
+}
@@ -0,0 +1,139 @@
+package com.demod.discord.boredgames;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+import com.demod.discord.boredgames.ActionRoutes.ActionHandler;
+
+class ActionRoutesTest {
+
+	private static final long TTL_MILLIS = 1000;
+
+	private static final ActionHandler NO_ACTION = (e, index, trace) -> {
+	};
+
+	private long nowMillis = 0;
+	private final ActionRoutes routes = new ActionRoutes(TTL_MILLIS, () -> nowMillis);
+
+	/**
+	 * Shows a display the way a game does, whose route goes once the game has
+	 * moved on to its next display.
+	 */
+	private CompletableFuture<String> show(String displayKey, int gameId, ActionHandler handler) {
+		CompletableFuture<String> awaitor = new CompletableFuture<>();
+		routes.put(displayKey, gameId, awaitor, 3, handler);
+		return awaitor;
+	}
+
+	@Test
+	void dropsRoutesOfEndedGames() {
+		routes.put(ActionId.displayKey(1, 0), 1, new CompletableFuture<>(), 2, NO_ACTION);
+		routes.put(ActionId.displayKey(2, 0), 2, new CompletableFuture<>(), 3, NO_ACTION);
+		routes.removeGame(1);
+		assertFalse(routes.get(ActionId.displayKey(1, 0)).isPresent());
+		assertTrue(routes.get(ActionId.displayKey(2, 0)).isPresent());
+		assertEquals(3, routes.getRetainedActionCount());
+	}
+
+	@Test
+	void dropsRoutesWhenTheirDisplayGetsAResult() {
+		CompletableFuture<String> awaitor = new CompletableFuture<>();
+		routes.put(ActionId.displayKey(1, 0), 1, awaitor, 2, NO_ACTION);
+		awaitor.complete("done");
+		assertFalse(routes.get(ActionId.displayKey(1, 0)).isPresent());
+		assertEquals(0, routes.getRouteCount());
+	}
+
+	@Test
+	void expiresRoutesPastTheirTtl() {
+		CompletableFuture<String> expired = new CompletableFuture<>();
+		CompletableFuture<String> live = new CompletableFuture<>();
+		routes.put(ActionId.displayKey(1, 0), 1, expired, 2, NO_ACTION);
+		nowMillis = 600;
+		routes.put(ActionId.displayKey(2, 0), 2, live, 3, NO_ACTION);
+
+		nowMillis = TTL_MILLIS;
+		assertEquals(0, routes.removeExpired());
+		assertEquals(2, routes.getRouteCount());
+
+		nowMillis = TTL_MILLIS + 1;
+		assertFalse(routes.get(ActionId.displayKey(1, 0)).isPresent(), "An expired route still routes");
+		assertEquals(1, routes.removeExpired());
+		assertEquals(1, routes.getRouteCount());
+		assertEquals(3, routes.getRetainedActionCount());
+		assertTrue(routes.get(ActionId.displayKey(2, 0)).isPresent());
+
+		ExecutionException timedOut = assertThrows(ExecutionException.class, expired::get);
+		assertInstanceOf(TimeoutException.class, timedOut.getCause());
+		assertFalse(live.isDone());
+	}
+
+	@Test
+	void keepsGamesApart() {
+		List<Integer> clicked = new ArrayList<>();
+		show(ActionId.displayKey(1, 0), 1, (e, index, trace) -> clicked.add(1));
+		show(ActionId.displayKey(2, 0), 2, (e, index, trace) -> clicked.add(2));
+
+		Optional<ActionId> actionId = routes.find(ActionId.format(ActionId.displayKey(2, 0), 0));
+		assertEquals(2, actionId.get().getGameId());
+		routes.get(actionId.get().getDisplayKey()).get().accept(null, 0, null);
+		assertEquals(List.of(2), clicked);
+	}
+
+	@Test
+	void rejectsClicksFromEarlierRuns() {
+		show(ActionId.displayKey(1, 0), 1, NO_ACTION);
+		String componentId = ActionId.format(ActionId.displayKey(1, 0), 0);
+		String earlier = "0" + componentId.substring(componentId.indexOf('.'));
+		assertFalse(routes.find(earlier).isPresent());
+	}
+
+	@Test
+	void rejectsClicksOnDisplaysThatMovedOn() {
+		CompletableFuture<String> first = show(ActionId.displayKey(1, 0), 1, NO_ACTION);
+		first.cancel(false);
+		show(ActionId.displayKey(1, 1), 1, NO_ACTION);
+
+		assertFalse(routes.find(ActionId.format(ActionId.displayKey(1, 0), 0)).isPresent());
+		assertTrue(routes.find(ActionId.format(ActionId.displayKey(1, 1), 0)).isPresent());
+	}
+
+	@Test
+	void routesButtonsOfTheCurrentDisplay() {
+		show(ActionId.displayKey(1, 5), 1, NO_ACTION);
+		Optional<ActionId> actionId = routes.find(ActionId.format(ActionId.displayKey(1, 5), 2));
+		assertTrue(actionId.isPresent());
+		assertEquals(1, actionId.get().getGameId());
+		assertEquals(2, actionId.get().getIndex());
+		assertFalse(routes.find(ActionId.format(ActionId.displayKey(1, 6), 2)).isPresent());
+	}
+
+	@Test
+	void routesResentDisplaysByTheKeyTheirButtonsCarry() {
+		// An unchanged display isn't edited, so its buttons keep the first display's key
+		List<String> clicked = new ArrayList<>();
+		String renderedKey = ActionId.displayKey(1, 0);
+		CompletableFuture<String> first = show(renderedKey, 1, (e, index, trace) -> clicked.add("first"));
+		show(renderedKey, 1, (e, index, trace) -> clicked.add("resent"));
+		// The first display finishing late doesn't take the resent one's route with it
+		first.cancel(false);
+
+		Optional<ActionId> actionId = routes.find(ActionId.format(renderedKey, 1));
+		assertTrue(actionId.isPresent());
+		routes.get(actionId.get().getDisplayKey()).get().accept(null, 1, null);
+		assertEquals(List.of("resent"), clicked);
+		assertFalse(routes.find(ActionId.format(ActionId.displayKey(1, 1), 1)).isPresent());
+	}
+}
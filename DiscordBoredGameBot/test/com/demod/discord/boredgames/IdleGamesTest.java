@@ -0,0 +1,59 @@
+package com.demod.discord.boredgames;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Every game runs on a thread of its own that spends nearly all its time
+ * parked on a display, waiting for a click. On virtual threads those parked
+ * games should only cost their stacks on the heap.
+ */
+class IdleGamesTest {
+
+	private static final int GAMES = 10_000;
+	private static final long MAX_HEAP_BYTES = 64L << 20;
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	@Test
+	void parksTenThousandGamesInASmallHeap() throws InterruptedException {
+		ThreadFactory gameThreadFactory = Thread.ofVirtual().name("game-", 0).factory();
+		CompletableFuture<Void> click = new CompletableFuture<>();
+
+		long heapBefore = usedHeap();
+		List<Thread> threads = new ArrayList<>(GAMES);
+		for (int i = 0; i < GAMES; i++) {
+			Thread thread = gameThreadFactory.newThread(() -> Game.await(click));
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			while (thread.getState() == Thread.State.RUNNABLE) {
+				Thread.sleep(1);
+			}
+			assertTrue(thread.isAlive(), "A game stopped waiting");
+		}
+		long heapParked = usedHeap();
+
+		click.complete(null);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		long usedBytes = heapParked - heapBefore;
+		assertTrue(usedBytes < MAX_HEAP_BYTES, GAMES + " idle games took " + (usedBytes >> 10) + " KB of heap, "
+				+ (usedBytes / GAMES) + " bytes each");
+	}
+}
@@ -0,0 +1,54 @@
+package com.demod.discord.boredgames;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+	private static void assertWithin(long expected, long actual, double error) {
+		assertTrue(actual >= expected && actual <= expected * (1 + error), "expected ~" + expected + " got " + actual);
+	}
+
+	@Test
+	void keepsSmallValuesExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int micros = 1; micros <= 20; micros++) {
+			histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+		}
+		assertEquals(10, histogram.getPercentileMicros(50));
+		assertEquals(20, histogram.getPercentileMicros(100));
+	}
+
+	@Test
+	void keepsLargeValuesWithinABucket() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int millis = 1; millis <= 1000; millis++) {
+			histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+		}
+		assertEquals(1000, histogram.getCount());
+		assertWithin(500_000, histogram.getPercentileMicros(50), 0.07);
+		assertWithin(990_000, histogram.getPercentileMicros(99), 0.07);
+		assertEquals(1_000_000, histogram.getPercentileMicros(100));
+	}
+
+	@Test
+	void reportsNothingWhenEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentileMicros(99));
+	}
+
+	@Test
+	void clampsValuesOutOfRange() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.recordNanos(-5);
+		histogram.recordNanos(Long.MAX_VALUE);
+		assertEquals(0, histogram.getPercentileMicros(50));
+		assertEquals((1L << 37) - 1, histogram.getMaxMicros());
+		assertEquals(histogram.getMaxMicros(), histogram.getPercentileMicros(100));
+	}
+}
@@ -0,0 +1,85 @@
+package com.demod.discord.boredgames;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.demod.discord.boredgames.Leaderboard.Row;
+
+class LeaderboardTest {
+
+	private static PlayerId player(int id) {
+		return new PlayerId(Integer.toString(id));
+	}
+
+	@Test
+	void clampsScoresOutOfRange() {
+		Leaderboard leaderboard = new Leaderboard("best", 100);
+		leaderboard.put(player(1), 250);
+		leaderboard.put(player(2), 100);
+		leaderboard.put(player(3), -5);
+		assertEquals(1, leaderboard.find(player(1)).get().getRank());
+		assertEquals(1, leaderboard.find(player(2)).get().getRank());
+		assertEquals(3, leaderboard.find(player(3)).get().getRank());
+		assertEquals(250, leaderboard.getTop(1).get(0).getScore());
+	}
+
+	@Test
+	void countsPercentileOfLowerScores() {
+		Leaderboard leaderboard = new Leaderboard("best", 100);
+		assertEquals(0.0, leaderboard.getPercentile(50));
+		for (int i = 0; i < 10; i++) {
+			leaderboard.put(player(i), i * 10);
+		}
+		assertEquals(0.0, leaderboard.getPercentile(0));
+		assertEquals(50.0, leaderboard.getPercentile(50));
+		assertEquals(90.0, leaderboard.getPercentile(90));
+		assertEquals(100.0, leaderboard.getPercentile(100));
+	}
+
+	@Test
+	void listsTopHighestFirst() {
+		Leaderboard leaderboard = new Leaderboard("best", 100);
+		leaderboard.put(player(1), 10);
+		leaderboard.put(player(2), 30);
+		leaderboard.put(player(3), 20);
+		List<Row> top = leaderboard.getTop(2);
+		assertEquals(2, top.size());
+		assertEquals(player(2), top.get(0).getPlayer());
+		assertEquals(player(3), top.get(1).getPlayer());
+		assertEquals(3, leaderboard.getTop(10).size());
+	}
+
+	@Test
+	void movesPlayersWhenTheirScoreChanges() {
+		Leaderboard leaderboard = new Leaderboard("best", 100);
+		leaderboard.put(player(1), 10);
+		leaderboard.put(player(2), 20);
+		leaderboard.put(player(1), 30);
+		assertEquals(2, leaderboard.getSize());
+		assertEquals(1, leaderboard.find(player(1)).get().getRank());
+		assertEquals(2, leaderboard.find(player(2)).get().getRank());
+
+		leaderboard.remove(player(1));
+		assertFalse(leaderboard.find(player(1)).isPresent());
+		assertEquals(1, leaderboard.getSize());
+		assertEquals(1, leaderboard.find(player(2)).get().getRank());
+	}
+
+	@Test
+	void sharesRanksBetweenTies() {
+		Leaderboard leaderboard = new Leaderboard("best", 100);
+		leaderboard.put(player(1), 50);
+		leaderboard.put(player(2), 70);
+		leaderboard.put(player(3), 50);
+		leaderboard.put(player(4), 10);
+		assertEquals(1, leaderboard.find(player(2)).get().getRank());
+		assertEquals(2, leaderboard.find(player(1)).get().getRank());
+		assertEquals(2, leaderboard.find(player(3)).get().getRank());
+		assertEquals(4, leaderboard.find(player(4)).get().getRank());
+		assertEquals(2, leaderboard.getRank(60));
+	}
+}
@@ -0,0 +1,189 @@
+package com.demod.discord.boredgames;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.demod.discord.boredgames.RestScheduler.Priority;
+
+import net.dv8tion.jda.api.requests.RestAction;
+
+class RestSchedulerTest {
+
+	/**
+	 * Stands in for Discord, answering each request as it is submitted and
+	 * refusing any that go over its per bucket limit.
+	 */
+	private static class FakeEndpoint {
+		private static class Sent {
+			private final String name;
+			private final long millis;
+
+			public Sent(String name, long millis) {
+				this.name = name;
+				this.millis = millis;
+			}
+		}
+
+		private final int bucketLimit;
+		private final long bucketWindowMillis;
+
+		// Key = Bucket ID
+		private final Map<String, Deque<Long>> bucketSentMillis = new HashMap<>();
+		private final List<Sent> sent = new ArrayList<>();
+		private int refusedCount = 0;
+
+		public FakeEndpoint(int bucketLimit, long bucketWindowMillis) {
+			this.bucketLimit = bucketLimit;
+			this.bucketWindowMillis = bucketWindowMillis;
+		}
+
+		public RestAction<String> action(String bucketId, String name) {
+			return action(bucketId, name, CompletableFuture.completedFuture(name));
+		}
+
+		/**
+		 * @param response completes when Discord answers
+		 */
+		@SuppressWarnings("unchecked")
+		public RestAction<String> action(String bucketId, String name, CompletableFuture<String> response) {
+			return (RestAction<String>) Proxy.newProxyInstance(RestAction.class.getClassLoader(),
+					new Class<?>[] { RestAction.class }, (proxy, method, args) -> {
+						if (!method.getName().equals("submit")) {
+							throw new UnsupportedOperationException(method.getName());
+						}
+						return receive(bucketId, name, response);
+					});
+		}
+
+		public synchronized long millisOf(String name) {
+			return sent.stream().filter(s -> s.name.equals(name)).findFirst().get().millis;
+		}
+
+		public synchronized List<String> names() {
+			return sent.stream().map(s -> s.name).collect(Collectors.toList());
+		}
+
+		private synchronized CompletableFuture<String> receive(String bucketId, String name,
+				CompletableFuture<String> response) {
+			long nowMillis = System.currentTimeMillis();
+			Deque<Long> sentMillis = bucketSentMillis.computeIfAbsent(bucketId, k -> new ArrayDeque<>());
+			while (!sentMillis.isEmpty() && sentMillis.peekFirst() + bucketWindowMillis <= nowMillis) {
+				sentMillis.pollFirst();
+			}
+			if (sentMillis.size() >= bucketLimit) {
+				refusedCount++;
+				return CompletableFuture.failedFuture(new IllegalStateException("429 Too Many Requests"));
+			}
+			sentMillis.addLast(nowMillis);
+			sent.add(new Sent(name, nowMillis));
+			return response;
+		}
+	}
+
+	private static void awaitAll(List<CompletableFuture<String>> results) throws Exception {
+		CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	void failsUnsentRequestsOnShutdown() throws Exception {
+		FakeEndpoint discord = new FakeEndpoint(100, 1000);
+		RestScheduler rest = new RestScheduler(100, 1000, 100, 1000);
+		CompletableFuture<String> response = new CompletableFuture<>();
+		CompletableFuture<String> inFlight = rest.submit("channel", Priority.STATE,
+				discord.action("channel", "in flight", response));
+		List<CompletableFuture<String>> queued = List.of(
+				rest.submit("channel", Priority.STATE, discord.action("channel", "queued 1")),
+				rest.submit("channel", Priority.INTERACTIVE, discord.action("channel", "queued 2")));
+
+		rest.shutdown();
+		for (CompletableFuture<String> result : queued) {
+			ExecutionException failure = assertThrows(ExecutionException.class,
+					() -> result.get(1, TimeUnit.SECONDS));
+			assertInstanceOf(IllegalStateException.class, failure.getCause());
+		}
+		CompletableFuture<String> late = rest.submit("channel", Priority.INTERACTIVE,
+				discord.action("channel", "late"));
+		assertTrue(late.isCompletedExceptionally());
+
+		// What Discord already has still gets its answer
+		assertFalse(inFlight.isDone());
+		response.complete("in flight");
+		assertEquals("in flight", inFlight.get(1, TimeUnit.SECONDS));
+		assertEquals(List.of("in flight"), discord.names());
+	}
+
+	@Test
+	void keepsGlobalHeadroomForImportantRequests() throws Exception {
+		FakeEndpoint discord = new FakeEndpoint(100, 1000);
+		// Animation and notifications only get 3 of the 4 global sends
+		RestScheduler rest = new RestScheduler(100, 1000, 4, 500);
+		List<CompletableFuture<String>> results = new ArrayList<>();
+		for (String channel : List.of("a", "b", "c", "d")) {
+			results.add(rest.submit(channel, Priority.ANIMATION, discord.action(channel, "frame " + channel)));
+		}
+		results.add(rest.submit("e", Priority.INTERACTIVE, discord.action("e", "prompt e")));
+		assertEquals(List.of("frame a", "frame b", "frame c", "prompt e"), discord.names());
+
+		awaitAll(results);
+		assertEquals(List.of("frame a", "frame b", "frame c", "prompt e", "frame d"), discord.names());
+		assertTrue(discord.millisOf("frame d") - discord.millisOf("frame a") >= 500);
+		assertEquals(0, discord.refusedCount);
+	}
+
+	@Test
+	void sendsMostImportantFirst() throws Exception {
+		FakeEndpoint discord = new FakeEndpoint(100, 1000);
+		RestScheduler rest = new RestScheduler(100, 1000, 100, 1000);
+		CompletableFuture<String> response = new CompletableFuture<>();
+		List<CompletableFuture<String>> results = new ArrayList<>();
+		results.add(rest.submit("channel", Priority.STATE, discord.action("channel", "in flight", response)));
+		results.add(rest.submit("channel", Priority.NOTIFICATION, discord.action("channel", "notification")));
+		results.add(rest.submit("channel", Priority.ANIMATION, discord.action("channel", "frame")));
+		results.add(rest.submit("channel", Priority.STATE, discord.action("channel", "state 1")));
+		results.add(rest.submit("channel", Priority.INTERACTIVE, discord.action("channel", "prompt")));
+		results.add(rest.submit("channel", Priority.STATE, discord.action("channel", "state 2")));
+
+		response.complete("in flight");
+		awaitAll(results);
+		assertEquals(List.of("in flight", "prompt", "state 1", "state 2", "frame", "notification"),
+				discord.names());
+	}
+
+	@Test
+	void spacesRequestsWithinTheBucketLimit() throws Exception {
+		// Discord's 5 messages per 5 seconds, sped up tenfold
+		FakeEndpoint discord = new FakeEndpoint(5, 500);
+		RestScheduler rest = new RestScheduler(5, 500, 100, 1000);
+		List<CompletableFuture<String>> results = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			results.add(rest.submit("channel", Priority.STATE, discord.action("channel", "message " + i)));
+		}
+		// Another channel has limits of its own
+		results.add(rest.submit("other", Priority.STATE, discord.action("other", "other message")));
+
+		awaitAll(results);
+		assertEquals(0, discord.refusedCount);
+		assertTrue(discord.millisOf("other message") - discord.millisOf("message 0") < 500);
+		for (int i = 5; i < 12; i++) {
+			assertTrue(discord.millisOf("message " + i) - discord.millisOf("message " + (i - 5)) >= 500,
+					"message " + i + " was sent too soon");
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package com.demod.discord.boredgames;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SaveCacheTest {
+
+	private static final long IDLE_MILLIS = 1000;
+	private static final long BOARD_IDLE_MILLIS = 10_000;
+	// Long enough that only the test flushes
+	private static final long NO_FLUSH_MILLIS = 3_600_000;
+
+	@TempDir
+	Path directory;
+
+	private long nowMillis = 0;
+	private int boardFills = 0;
+
+	private SaveCache cache(SaveStore store, long flushIntervalMillis) {
+		return new SaveCache(store, flushIntervalMillis, IDLE_MILLIS, BOARD_IDLE_MILLIS, () -> nowMillis);
+	}
+
+	private Leaderboard leaderboard(SaveCache saves) {
+		return saves.getLeaderboard("123", List.of("123"), "Yahtzee", () -> new Leaderboard("score", 100),
+				(leaderboard, json) -> boardFills++);
+	}
+
+	/**
+	 * @return what a bot started after a crash would find on disk
+	 */
+	private SaveStore restart() {
+		return new SaveStore(directory, saveKey -> null);
+	}
+
+	@Test
+	void dropsLeaderboardsIdleForLonger() {
+		SaveCache saves = cache(restart(), NO_FLUSH_MILLIS);
+		leaderboard(saves);
+
+		nowMillis = BOARD_IDLE_MILLIS - 1;
+		saves.flush();
+		// A writer keeping the board up to date counts as using it
+		assertTrue(saves.findLeaderboard("123", "Yahtzee").isPresent());
+		nowMillis = 2 * BOARD_IDLE_MILLIS - 2;
+		saves.flush();
+		assertTrue(saves.findLeaderboard("123", "Yahtzee").isPresent(), "A board in use was dropped");
+
+		nowMillis = 4 * BOARD_IDLE_MILLIS;
+		saves.flush();
+		assertFalse(saves.findLeaderboard("123", "Yahtzee").isPresent());
+		leaderboard(saves);
+		assertEquals(2, boardFills);
+	}
+
+	@Test
+	void evictsIdleDocumentsOnlyOnceFlushed() {
+		SaveCache saves = cache(restart(), NO_FLUSH_MILLIS);
+		saves.write("123", json -> json.put("score", 1));
+		saves.write("456", json -> json.put("score", 2));
+		nowMillis = 600;
+		saves.read("456", json -> json.getInt("score"));
+
+		nowMillis = 1200;
+		saves.flush();
+		assertEquals(1, saves.getCachedCount());
+		assertEquals(1, restart().load("123").getInt("score"));
+		assertEquals(2, restart().load("456").getInt("score"));
+
+		// Loaded again from what was flushed
+		assertEquals(1, (int) saves.read("123", json -> json.getInt("score")));
+		assertEquals(2, saves.getCachedCount());
+	}
+
+	@Test
+	void flushesOnItsInterval() throws InterruptedException {
+		SaveCache saves = cache(restart(), 50);
+		saves.write("123", json -> json.put("score", 1));
+		for (int i = 0; i < 100 && restart().load("123").length() == 0; i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(1, restart().load("123").getInt("score"));
+	}
+
+	@Test
+	void keepsDocumentsThatFailedToSave() {
+		SaveStore failing = new SaveStore(directory, saveKey -> null) {
+			@Override
+			public void save(String saveKey, String json) throws IOException {
+				throw new IOException("Disk full");
+			}
+		};
+		SaveCache saves = cache(failing, NO_FLUSH_MILLIS);
+		saves.write("123", json -> json.put("score", 1));
+
+		nowMillis = 2000;
+		saves.flush();
+		assertEquals(1, saves.getCachedCount());
+		assertEquals(1, saves.getDirtyCount());
+		assertEquals(1, (int) saves.read("123", json -> json.getInt("score")));
+	}
+
+	@Test
+	void keepsLeaderboardsWhenTheirDocumentsAreEvicted() {
+		SaveCache saves = cache(restart(), NO_FLUSH_MILLIS);
+		Leaderboard leaderboard = leaderboard(saves);
+
+		nowMillis = 2 * IDLE_MILLIS;
+		saves.flush();
+		assertEquals(0, saves.getCachedCount());
+		assertSame(leaderboard, leaderboard(saves));
+		assertEquals(1, boardFills);
+	}
+
+	@Test
+	void losesOnlyWritesSinceTheLastFlushInACrash() {
+		SaveCache saves = cache(restart(), NO_FLUSH_MILLIS);
+		saves.write("123", json -> json.put("score", 1));
+		saves.write("456", json -> json.put("score", 1));
+		saves.flush();
+		saves.write("123", json -> json.put("score", 2));
+		saves.write("789", json -> json.put("score", 3));
+
+		// The cache is dropped without a flush or a shutdown
+		SaveStore restarted = restart();
+		assertEquals(1, restarted.load("123").getInt("score"));
+		assertEquals(1, restarted.load("456").getInt("score"));
+		assertEquals(0, restarted.load("789").length());
+	}
+}
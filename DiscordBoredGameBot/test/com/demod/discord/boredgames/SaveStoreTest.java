@@ -0,0 +1,99 @@
+package com.demod.discord.boredgames;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SaveStoreTest {
+
+	@TempDir
+	Path directory;
+
+	private final List<String> legacyLoads = new ArrayList<>();
+
+	private SaveStore store(JSONObject legacy) {
+		return new SaveStore(directory, saveKey -> {
+			legacyLoads.add(saveKey);
+			return legacy;
+		});
+	}
+
+	@Test
+	void keepsEachKeyInItsOwnFile() throws IOException {
+		SaveStore store = store(null);
+		store.save("123", new JSONObject().put("score", 1).toString());
+		store.save("user-456", new JSONObject().put("score", 2).toString());
+		store.save("../789", new JSONObject().put("score", 3).toString());
+
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(3, files.filter(f -> f.getFileName().toString().endsWith(".json")).count());
+		}
+		assertEquals(1, store.load("123").getInt("score"));
+		assertEquals(2, store.load("user-456").getInt("score"));
+		assertEquals(3, store.load("../789").getInt("score"));
+	}
+
+	@Test
+	void loadsWhatItSaved() throws IOException {
+		SaveStore store = store(new JSONObject().put("score", 1));
+		store.save("123", new JSONObject().put("score", 5).toString());
+		store.save("123", new JSONObject().put("score", 7).toString());
+
+		assertEquals(7, store.load("123").getInt("score"));
+		assertTrue(legacyLoads.isEmpty());
+		assertEquals(0, store.getMigratedCount());
+	}
+
+	@Test
+	void migratesOnlyTheSavesOfLegacySettings() throws IOException {
+		JSONObject legacyGames = new JSONObject().put("score", 9);
+		SaveStore store = store(new JSONObject().put("prefix", "!").put(Game.JSONKEY_GUILD_GAMES, legacyGames));
+		JSONObject document = store.load("123");
+
+		assertEquals(1, document.length());
+		assertEquals(9, document.getJSONObject(Game.JSONKEY_GUILD_GAMES).getInt("score"));
+		assertEquals(List.of("123"), legacyLoads);
+		assertEquals(1, store.getMigratedCount());
+
+		// A copy, so the old settings aren't changed along with it
+		document.getJSONObject(Game.JSONKEY_GUILD_GAMES).put("score", 10);
+		assertEquals(9, legacyGames.getInt("score"));
+
+		store.save("123", document.toString());
+		assertEquals(10, store.load("123").getJSONObject(Game.JSONKEY_GUILD_GAMES).getInt("score"));
+		assertEquals(1, legacyLoads.size());
+	}
+
+	@Test
+	void neverLooksUpGlobalSavesInLegacySettings() {
+		SaveStore store = store(new JSONObject().put(Game.JSONKEY_GUILD_GAMES, new JSONObject().put("score", 9)));
+		assertEquals(0, store.load(Game.SAVEKEY_GLOBAL + "-3").length());
+		assertTrue(legacyLoads.isEmpty());
+		assertEquals(0, store.getMigratedCount());
+	}
+
+	@Test
+	void startsNewKeysEmptyWithoutCountingThem() {
+		SaveStore store = store(new JSONObject());
+		assertEquals(0, store.load("123").length());
+		assertEquals(0, store.getMigratedCount());
+
+		store = store(null);
+		assertEquals(0, store.load("456").length());
+		assertEquals(0, store.getMigratedCount());
+
+		store = store(new JSONObject().put("prefix", "!"));
+		assertEquals(0, store.load("789").length());
+		assertEquals(0, store.getMigratedCount());
+	}
+}
@@ -0,0 +1,78 @@
+package com.demod.discord.boredgames;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TimerWheelTest {
+
+	private static class Item {
+		private final long deadlineTick;
+		private boolean cancelled = false;
+
+		public Item(long deadlineTick) {
+			this.deadlineTick = deadlineTick;
+		}
+	}
+
+	private static TimerWheel<Item> wheel(int size) {
+		return new TimerWheel<>(size, i -> i.deadlineTick, i -> i.cancelled);
+	}
+
+	/**
+	 * @return the tick each item fell due on, in the order they were added
+	 */
+	private static List<Long> run(TimerWheel<Item> wheel, List<Item> items, int ticks) {
+		List<Long> dueTicks = new ArrayList<>();
+		items.forEach(i -> dueTicks.add(-1L));
+		for (int t = 0; t < ticks; t++) {
+			long tick = wheel.getTick();
+			for (Item item : wheel.advance()) {
+				dueTicks.set(items.indexOf(item), tick);
+			}
+		}
+		return dueTicks;
+	}
+
+	@Test
+	void dropsCancelledItems() {
+		TimerWheel<Item> wheel = wheel(8);
+		Item kept = new Item(3);
+		Item cancelled = new Item(3);
+		wheel.add(kept);
+		wheel.add(cancelled);
+		cancelled.cancelled = true;
+		assertEquals(List.of(3L, -1L), run(wheel, List.of(kept, cancelled), 8));
+	}
+
+	@Test
+	void firesItemsOnTheirTick() {
+		TimerWheel<Item> wheel = wheel(8);
+		List<Item> items = List.of(new Item(0), new Item(5), new Item(5), new Item(7));
+		items.forEach(wheel::add);
+		assertEquals(List.of(0L, 5L, 5L, 7L), run(wheel, items, 8));
+	}
+
+	@Test
+	void firesLateItemsOnTheNextTick() {
+		TimerWheel<Item> wheel = wheel(8);
+		run(wheel, List.of(), 10);
+		Item late = new Item(2);
+		wheel.add(late);
+		assertEquals(List.of(10L), run(wheel, List.of(late), 1));
+	}
+
+	@Test
+	void waitsOutWholeTurnsOfTheWheel() {
+		TimerWheel<Item> wheel = wheel(8);
+		List<Item> items = List.of(new Item(3), new Item(11), new Item(27));
+		items.forEach(wheel::add);
+		List<Long> dueTicks = run(wheel, items, 32);
+		assertEquals(List.of(3L, 11L, 27L), dueTicks);
+		assertTrue(wheel.advance().isEmpty());
+	}
+}